@@ -3,6 +3,12 @@ package io.gravitee.management.services.external.api;
 
 import io.gravitee.rest.api.model.api.ApiEntity;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * @author Azize ELAMRANI (azize.elamrani at graviteesource.com)
  * @author GraviteeSource Team
@@ -11,4 +17,58 @@ public interface APIService {
     String name();
     void startAPI(ApiEntity api);
     void stopAPI(ApiEntity api);
+
+    /**
+     * Starts the given APIs, one after the other by default.
+     *
+     * @throws BatchOperationException if some of the APIs could not be started
+     */
+    default void startAPIs(Collection<ApiEntity> apis) {
+        final Map<String, RuntimeException> failures = new LinkedHashMap<>();
+        for (final ApiEntity api : apis) {
+            try {
+                startAPI(api);
+            } catch (final RuntimeException ex) {
+                failures.put(api.getId(), ex);
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new BatchOperationException("Unable to start the APIs on " + name(), failures);
+        }
+    }
+
+    /**
+     * Stops the given APIs, one after the other by default.
+     *
+     * @throws BatchOperationException if some of the APIs could not be stopped
+     */
+    default void stopAPIs(Collection<ApiEntity> apis) {
+        final Map<String, RuntimeException> failures = new LinkedHashMap<>();
+        for (final ApiEntity api : apis) {
+            try {
+                stopAPI(api);
+            } catch (final RuntimeException ex) {
+                failures.put(api.getId(), ex);
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new BatchOperationException("Unable to stop the APIs on " + name(), failures);
+        }
+    }
+
+    /**
+     * Lists the ids of the Gravitee APIs existing on the external API provider, page by page.
+     *
+     * @return the ids of the given page, less than the page size once the last page is reached
+     */
+    default List<String> listAPIs(int page, int size) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Forgets what is known locally about the synchronization of the given API, so that it is looked up or created
+     * again on the external API provider when it is next started.
+     */
+    default void forgetAPI(String apiId) {
+    }
 }
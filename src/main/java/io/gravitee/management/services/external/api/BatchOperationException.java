@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Failure of some of the operations of a batch on an external API provider, the other ones having succeeded.
+ *
+ * @author GraviteeSource Team
+ */
+public class BatchOperationException extends RuntimeException {
+
+    private final Map<String, RuntimeException> failures;
+
+    /**
+     * @param failures the failure of each API, by API id
+     */
+    public BatchOperationException(final String message, final Map<String, RuntimeException> failures) {
+        super(String.format("%s: %d failure(s)", message, failures.size()));
+        this.failures = Collections.unmodifiableMap(failures);
+        failures.values().forEach(this::addSuppressed);
+    }
+
+    public Map<String, RuntimeException> getFailures() {
+        return failures;
+    }
+}
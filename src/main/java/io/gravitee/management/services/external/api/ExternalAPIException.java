@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api;
+
+/**
+ * Failure of a call to an external API provider.
+ *
+ * @author GraviteeSource Team
+ */
+public class ExternalAPIException extends RuntimeException {
+
+    private final int status;
+
+    public ExternalAPIException(final String message, final int status) {
+        super(message);
+        this.status = status;
+    }
+
+    public ExternalAPIException(final String message, final Throwable cause) {
+        super(message, cause);
+        this.status = -1;
+    }
+
+    /**
+     * @return the HTTP status returned by the provider, -1 if it could not be reached
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return true if the failure is transient (network error, throttling or server error) and the call can be retried
+     */
+    public boolean isRetryable() {
+        return status < 0 || status == 429 || status >= 500;
+    }
+}
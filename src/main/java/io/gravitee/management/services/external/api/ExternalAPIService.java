@@ -15,23 +15,31 @@
  */
 package io.gravitee.management.services.external.api;
 
+import io.gravitee.common.component.Lifecycle;
 import io.gravitee.common.event.Event;
 import io.gravitee.common.event.EventListener;
 import io.gravitee.common.event.EventManager;
 import io.gravitee.common.service.AbstractService;
+import io.gravitee.management.services.external.api.dispatcher.ApiEventCoalescer;
+import io.gravitee.management.services.external.api.dispatcher.ApiEventDispatcher;
+import io.gravitee.management.services.external.api.reconciliation.RateLimiter;
+import io.gravitee.management.services.external.api.reconciliation.ReconciliationEngine;
+import io.gravitee.management.services.external.api.resilience.ResilientAPIService;
+import io.gravitee.management.services.external.api.sharding.ShardingTagsMatcher;
+import io.gravitee.management.services.external.api.state.SyncStateStore;
 import io.gravitee.rest.api.model.api.ApiEntity;
+import io.gravitee.rest.api.service.ApiService;
 import io.gravitee.rest.api.service.event.ApiEvent;
+import io.gravitee.rest.api.service.exceptions.ApiNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
 
-import java.text.Collator;
-import java.util.*;
-import java.util.stream.Collectors;
-
-import static java.util.Arrays.asList;
-import static java.util.Collections.emptyList;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Azize ELAMRANI (azize.elamrani at graviteesource.com)
@@ -41,6 +49,17 @@ public class ExternalAPIService extends AbstractService implements EventListener
 
     private final Logger logger = LoggerFactory.getLogger(ExternalAPIService.class);
     private static final String SHARDING_TAGS_PROPERTY = "services.external-api.tags";
+    private static final String SHARDING_TAGS_REFRESH_INTERVAL_PROPERTY = "services.external-api.tags-refresh-interval";
+    private static final String DISPATCHER_WORKERS_PROPERTY = "services.external-api.dispatcher.workers";
+    private static final String DISPATCHER_QUEUE_CAPACITY_PROPERTY = "services.external-api.dispatcher.queue-capacity";
+    private static final String DISPATCHER_OVERFLOW_PROPERTY = "services.external-api.dispatcher.overflow";
+    private static final String DISPATCHER_SHUTDOWN_TIMEOUT_PROPERTY = "services.external-api.dispatcher.shutdown-timeout";
+    private static final String COALESCING_WINDOW_PROPERTY = "services.external-api.dispatcher.coalescing-window";
+    private static final String RECONCILIATION_ENABLED_PROPERTY = "services.external-api.reconciliation.enabled";
+    private static final String RECONCILIATION_INTERVAL_PROPERTY = "services.external-api.reconciliation.interval";
+    private static final String RECONCILIATION_PARALLELISM_PROPERTY = "services.external-api.reconciliation.parallelism";
+    private static final String RECONCILIATION_RATE_PROPERTY = "services.external-api.reconciliation.rate";
+    private static final String RECONCILIATION_PAGE_SIZE_PROPERTY = "services.external-api.reconciliation.page-size";
 
     @Autowired
     private EventManager eventManager;
@@ -48,8 +67,19 @@ public class ExternalAPIService extends AbstractService implements EventListener
     private Environment environment;
     @Autowired(required = false)
     private APIService apiService;
+    @Autowired
+    private ApiService graviteeApiService;
+    @Autowired(required = false)
+    private SyncStateStore syncStateStore;
 
-    private List<String> shardingTags;
+    private volatile ShardingTagsMatcher shardingTagsMatcher;
+    // only accessed from the scheduler thread
+    private String rejectedShardingTags;
+    private ScheduledExecutorService scheduler;
+    private ApiEventDispatcher dispatcher;
+    private ApiEventCoalescer coalescer;
+    private ScheduledExecutorService reconciliationScheduler;
+    private ReconciliationEngine reconciliationEngine;
 
     @Override
     protected String name() {
@@ -59,29 +89,123 @@ public class ExternalAPIService extends AbstractService implements EventListener
     @Override
     protected void doStart() throws Exception {
         if (apiService != null) {
+            shardingTagsMatcher = ShardingTagsMatcher.compile(getShardingTags());
             super.doStart();
+            dispatcher = new ApiEventDispatcher(
+                    environment.getProperty(DISPATCHER_WORKERS_PROPERTY, Integer.class, 4),
+                    environment.getProperty(DISPATCHER_QUEUE_CAPACITY_PROPERTY, Integer.class, 1000),
+                    ApiEventDispatcher.OverflowPolicy.valueOf(
+                            environment.getProperty(DISPATCHER_OVERFLOW_PROPERTY, "block").toUpperCase()));
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "external-api-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            coalescer = new ApiEventCoalescer(environment.getProperty(COALESCING_WINDOW_PROPERTY, Long.class, 1000L),
+                    scheduler, (type, api) -> dispatcher.dispatch(api.getId(), () -> handle(type, api)));
+            final long tagsRefreshInterval = environment.getProperty(SHARDING_TAGS_REFRESH_INTERVAL_PROPERTY, Long.class, 30000L);
+            if (tagsRefreshInterval > 0) {
+                scheduler.scheduleWithFixedDelay(this::refreshShardingTags, tagsRefreshInterval, tagsRefreshInterval,
+                        TimeUnit.MILLISECONDS);
+            }
+            if (apiService instanceof ResilientAPIService) {
+                ((ResilientAPIService) apiService).start(this::findDeployedApi);
+            }
             eventManager.subscribeForEvents(this, ApiEvent.class);
-            final String systemPropertyTags = System.getProperty(SHARDING_TAGS_PROPERTY);
-            final String tags = systemPropertyTags == null ? environment.getProperty(SHARDING_TAGS_PROPERTY) : systemPropertyTags;
-            if (tags != null && !tags.isEmpty()) {
-                shardingTags = asList(tags.split(","));
-            } else {
-                shardingTags = emptyList();
+            if (environment.getProperty(RECONCILIATION_ENABLED_PROPERTY, Boolean.class, true)) {
+                startReconciliation();
+            }
+        }
+    }
+
+    private void startReconciliation() {
+        final int parallelism = environment.getProperty(RECONCILIATION_PARALLELISM_PROPERTY, Integer.class, 4);
+        reconciliationEngine = new ReconciliationEngine(apiService, graviteeApiService, () -> shardingTagsMatcher,
+                syncStateStore, dispatcher, parallelism,
+                environment.getProperty(RECONCILIATION_PAGE_SIZE_PROPERTY, Integer.class, 100),
+                new RateLimiter(environment.getProperty(RECONCILIATION_RATE_PROPERTY, Double.class, 4D), parallelism));
+        reconciliationScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "external-api-reconciliation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long interval = environment.getProperty(RECONCILIATION_INTERVAL_PROPERTY, Long.class, 0L);
+        if (interval > 0) {
+            reconciliationScheduler.scheduleWithFixedDelay(this::reconcile, 0, interval, TimeUnit.MILLISECONDS);
+        } else {
+            reconciliationScheduler.execute(this::reconcile);
+        }
+    }
+
+    private void reconcile() {
+        try {
+            reconciliationEngine.reconcile();
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            logger.warn("Reconciliation of the external APIs with {} interrupted", apiService.name());
+        } catch (final Exception ex) {
+            logger.error("Error while reconciling the external APIs with {}", apiService.name(), ex);
+        }
+    }
+
+    /**
+     * Reads the API whose start is replayed, null if it is no longer deployed or handled by this instance.
+     */
+    private ApiEntity findDeployedApi(final String apiId) {
+        final ApiEntity api;
+        try {
+            api = graviteeApiService.findById(apiId);
+        } catch (final ApiNotFoundException anfe) {
+            return null;
+        }
+        return api.getState() == Lifecycle.State.STARTED && shardingTagsMatcher.matches(api.getTags()) ? api : null;
+    }
+
+    private String getShardingTags() {
+        final String systemPropertyTags = System.getProperty(SHARDING_TAGS_PROPERTY);
+        return systemPropertyTags == null ? environment.getProperty(SHARDING_TAGS_PROPERTY) : systemPropertyTags;
+    }
+
+    private void refreshShardingTags() {
+        final String tags = getShardingTags();
+        if (Objects.equals(tags, shardingTagsMatcher.getExpression())) {
+            rejectedShardingTags = null;
+        } else if (!Objects.equals(tags, rejectedShardingTags)) {
+            try {
+                shardingTagsMatcher = ShardingTagsMatcher.compile(tags);
+                rejectedShardingTags = null;
+                logger.info("Sharding tags of the external API service reloaded: {}", tags);
+            } catch (final IllegalArgumentException iae) {
+                // logged once, until the tags are changed again
+                rejectedShardingTags = tags;
+                logger.error("Invalid sharding tags [{}], keeping the previous ones", tags, iae);
             }
         }
     }
 
     @Override
     protected void doStop() throws Exception {
+        if (reconciliationScheduler != null) {
+            reconciliationScheduler.shutdownNow();
+        }
+        if (dispatcher != null) {
+            coalescer.close();
+            scheduler.shutdownNow();
+            dispatcher.shutdown(environment.getProperty(DISPATCHER_SHUTDOWN_TIMEOUT_PROPERTY, Long.class, 30000L),
+                    TimeUnit.MILLISECONDS);
+        }
         super.doStop();
     }
 
     @Override
     public void onEvent(Event<ApiEvent, ApiEntity> event) {
-        final ApiEntity api = event.content();
-        switch (event.type()) {
+        coalescer.submit(event.type(), event.content());
+    }
+
+    private void handle(final ApiEvent type, final ApiEntity api) {
+        switch (type) {
             case DEPLOY:
-                if (hasMatchingTags(api.getTags())) {
+                if (shardingTagsMatcher.matches(api.getTags())) {
                     logger.info("Starting the external API id[{}] name[{}] from {}", api.getId(), api.getName(), apiService.name());
                     apiService.startAPI(api);
                 }
@@ -90,9 +214,8 @@ public class ExternalAPIService extends AbstractService implements EventListener
                 apiService.stopAPI(api);
                 break;
             case UPDATE:
-                if (hasMatchingTags(api.getTags())) {
+                if (shardingTagsMatcher.matches(api.getTags())) {
                     logger.info("Updating the external API id[{}] name[{}] from {}", api.getId(), api.getName(), apiService.name());
-                    apiService.stopAPI(api);
                     apiService.startAPI(api);
                 } else {
                     apiService.stopAPI(api);
@@ -100,46 +223,4 @@ public class ExternalAPIService extends AbstractService implements EventListener
                 break;
         }
     }
-
-    private boolean hasMatchingTags(Set<String> tags) {
-        if (!shardingTags.isEmpty()) {
-            if (tags != null) {
-                final List<String> inclusionTags = shardingTags.stream()
-                        .map(String::trim)
-                        .filter(tag -> !tag.startsWith("!"))
-                        .collect(Collectors.toList());
-
-                final List<String> exclusionTags = shardingTags.stream()
-                        .map(String::trim)
-                        .filter(tag -> tag.startsWith("!"))
-                        .map(tag -> tag.substring(1))
-                        .collect(Collectors.toList());
-
-                if (inclusionTags.stream().anyMatch(exclusionTags::contains)) {
-                    throw new IllegalArgumentException("You must not configure a tag to be included and excluded");
-                }
-
-                return inclusionTags.stream()
-                        .anyMatch(tag -> tags.stream()
-                                .anyMatch(crtTag -> {
-                                    final Collator collator = Collator.getInstance();
-                                    collator.setStrength(Collator.NO_DECOMPOSITION);
-                                    return collator.compare(tag, crtTag) == 0;
-                                })
-                        ) || (!exclusionTags.isEmpty() &&
-                        exclusionTags.stream()
-                                .noneMatch(tag -> tags.stream()
-                                        .anyMatch(crtTag -> {
-                                            final Collator collator = Collator.getInstance();
-                                            collator.setStrength(Collator.NO_DECOMPOSITION);
-                                            return collator.compare(tag, crtTag) == 0;
-                                        })
-                                ));
-            }
-            //    logger.debug("Tags {} are configured on gateway instance but not found on the API {}", tagList, api.getName());
-            return false;
-        }
-        // no tags configured on this gateway instance
-        return true;
-    }
 }
@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.auth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Provides the authorization of the calls to an external API provider.
+ *
+ * Only one login is performed at a time, the token is refreshed in background before it expires and a failed login
+ * is not retried before an exponential backoff delay, the callers failing fast in the meantime.
+ *
+ * @author GraviteeSource Team
+ */
+public class TokenProvider implements Closeable {
+
+    private final Logger logger = LoggerFactory.getLogger(TokenProvider.class);
+
+    private static final double REFRESH_RATIO = 0.8;
+    private static final double VALIDITY_RATIO = 0.9;
+    private static final long MIN_BACKOFF = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_BACKOFF = TimeUnit.MINUTES.toNanos(1);
+
+    @FunctionalInterface
+    public interface Login {
+        Token login() throws IOException;
+    }
+
+    private final String name;
+    private final Login login;
+    private final ReentrantLock loginLock = new ReentrantLock();
+    private final ScheduledExecutorService scheduler;
+
+    private volatile CachedToken current;
+    // guarded by the login lock
+    private int failures;
+    private long retryAfter;
+    private ScheduledFuture<?> scheduledRefresh;
+
+    public TokenProvider(final String name, final Login login) {
+        this.name = name;
+        this.login = login;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "external-api-token-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the authorization header value, logging in if there is no valid token
+     * @throws IOException if the login fails or has failed too recently to be retried
+     */
+    public String getAuthorization() throws IOException {
+        final CachedToken token = current;
+        if (token != null && !token.isExpired()) {
+            return token.authorization;
+        }
+        return refresh(token);
+    }
+
+    /**
+     * Renews the given authorization after it has been rejected by the external API provider. If it has already been
+     * renewed by another caller, the new one is returned without logging in again.
+     */
+    public String renew(final String rejectedAuthorization) throws IOException {
+        final CachedToken token = current;
+        if (token != null && !token.authorization.equals(rejectedAuthorization) && !token.isExpired()) {
+            return token.authorization;
+        }
+        return refresh(token);
+    }
+
+    private String refresh(final CachedToken staleToken) throws IOException {
+        loginLock.lock();
+        try {
+            final CachedToken token = current;
+            if (token != null && token != staleToken && !token.isExpired()) {
+                // another caller has logged in in the meantime
+                return token.authorization;
+            }
+            if (failures > 0 && System.nanoTime() - retryAfter < 0) {
+                throw new IOException(String.format("Login to %s has failed %d time(s), next attempt in %d ms",
+                        name, failures, TimeUnit.NANOSECONDS.toMillis(retryAfter - System.nanoTime())));
+            }
+            return login().authorization;
+        } finally {
+            loginLock.unlock();
+        }
+    }
+
+    private CachedToken login() throws IOException {
+        try {
+            final Token token = login.login();
+            final long now = System.nanoTime();
+            final CachedToken cachedToken;
+            if (token.expiresIn > 0) {
+                cachedToken = new CachedToken(token.authorization, now + (long) (token.expiresIn * VALIDITY_RATIO));
+                scheduleRefresh((long) (token.expiresIn * REFRESH_RATIO));
+            } else {
+                // the token does not expire or is renewed when rejected
+                cachedToken = new CachedToken(token.authorization, Long.MAX_VALUE);
+            }
+            current = cachedToken;
+            failures = 0;
+            return cachedToken;
+        } catch (final IOException | RuntimeException ex) {
+            failures++;
+            retryAfter = System.nanoTime() + Math.min(MAX_BACKOFF, MIN_BACKOFF << Math.min(failures - 1, 16));
+            throw ex;
+        }
+    }
+
+    private void refreshInBackground() {
+        loginLock.lock();
+        try {
+            login();
+            logger.debug("{} token refreshed", name);
+        } catch (final Exception ex) {
+            final CachedToken token = current;
+            if (token != null && !token.isExpired()) {
+                final long delay = Math.max(0, retryAfter - System.nanoTime());
+                logger.warn("Unable to refresh the {} token, next attempt in {} ms", name, TimeUnit.NANOSECONDS.toMillis(delay), ex);
+                scheduleRefresh(delay);
+            } else {
+                logger.warn("Unable to refresh the {} token", name, ex);
+            }
+        } finally {
+            loginLock.unlock();
+        }
+    }
+
+    private void scheduleRefresh(final long delay) {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        if (!scheduler.isShutdown()) {
+            scheduledRefresh = scheduler.schedule(this::refreshInBackground, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Stops the background refresh of the token.
+     */
+    @Override
+    public void close() {
+        loginLock.lock();
+        try {
+            scheduler.shutdownNow();
+            if (scheduledRefresh != null) {
+                scheduledRefresh.cancel(false);
+                scheduledRefresh = null;
+            }
+        } finally {
+            loginLock.unlock();
+        }
+    }
+
+    public static final class Token {
+        private final String authorization;
+        private final long expiresIn;
+
+        /**
+         * @param expiresIn the lifetime of the token, 0 or less if unknown
+         */
+        public Token(final String authorization, final long expiresIn, final TimeUnit unit) {
+            this.authorization = authorization;
+            this.expiresIn = expiresIn > 0 ? unit.toNanos(expiresIn) : -1;
+        }
+    }
+
+    private static final class CachedToken {
+        private final String authorization;
+        private final long expiresAt;
+
+        private CachedToken(final String authorization, final long expiresAt) {
+            this.authorization = authorization;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return expiresAt != Long.MAX_VALUE && System.nanoTime() - expiresAt >= 0;
+        }
+    }
+}
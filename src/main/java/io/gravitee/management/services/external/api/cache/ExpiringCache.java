@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache whose entries expire after a fixed time to live. The least recently used entry is evicted when the
+ * cache is full.
+ *
+ * @author GraviteeSource Team
+ */
+public class ExpiringCache<K, V> {
+
+    private final Logger logger = LoggerFactory.getLogger(ExpiringCache.class);
+
+    private final String name;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ExpiringCache(final String name, final int maxSize, final long ttl, final TimeUnit unit) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, CacheEntry<V>> eldest) {
+                final boolean evict = size() > ExpiringCache.this.maxSize;
+                if (evict) {
+                    evictions.increment();
+                }
+                return evict;
+            }
+        };
+    }
+
+    public V get(final K key) {
+        synchronized (entries) {
+            final CacheEntry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt - System.nanoTime() > 0) {
+                    hits.increment();
+                    return entry.value;
+                }
+                entries.remove(key);
+                evictions.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(final K key, final V value) {
+        if (maxSize <= 0 || value == null) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, new CacheEntry<>(value, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    public void invalidate(final K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Clears the cache and logs its statistics.
+     */
+    public void close() {
+        final int size;
+        synchronized (entries) {
+            size = entries.size();
+            entries.clear();
+        }
+        logger.info("{} cache stopped: size[{}] hits[{}] misses[{}] evictions[{}]",
+                name, size, hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private static final class CacheEntry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private CacheEntry(final V value, final long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
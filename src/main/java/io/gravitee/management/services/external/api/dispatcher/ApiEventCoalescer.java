@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.dispatcher;
+
+import io.gravitee.rest.api.model.api.ApiEntity;
+import io.gravitee.rest.api.service.event.ApiEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Collapses the bursts of events received for a same API during a time window into the last effective one.
+ *
+ * For instance DEPLOY, UPDATE, UPDATE is emitted as a single DEPLOY of the last API state, UPDATE, UPDATE as a
+ * single UPDATE and DEPLOY, UNDEPLOY is not emitted at all.
+ *
+ * @author GraviteeSource Team
+ */
+public class ApiEventCoalescer {
+
+    private final Logger logger = LoggerFactory.getLogger(ApiEventCoalescer.class);
+
+    private final long window;
+    private final ScheduledExecutorService scheduler;
+    private final BiConsumer<ApiEvent, ApiEntity> sink;
+    private final ConcurrentMap<String, PendingEvent> pendingEvents = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder emitted = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+
+    /**
+     * @param window the coalescing window in milliseconds, 0 to emit the events as soon as they are received
+     */
+    public ApiEventCoalescer(final long window, final ScheduledExecutorService scheduler,
+                             final BiConsumer<ApiEvent, ApiEntity> sink) {
+        this.window = window;
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    public void submit(final ApiEvent type, final ApiEntity api) {
+        received.increment();
+        if (window <= 0 || closed) {
+            emit(type, api);
+            return;
+        }
+        final String apiId = api.getId();
+        final boolean[] created = {false};
+        pendingEvents.compute(apiId, (id, pending) -> {
+            if (pending == null) {
+                created[0] = true;
+                return new PendingEvent(type, api);
+            }
+            pending.merge(type, api);
+            return pending;
+        });
+        if (created[0]) {
+            if (closed) {
+                // closed in the meantime, the event may have been missed by the final flush
+                flush(apiId);
+                return;
+            }
+            try {
+                scheduler.schedule(() -> flush(apiId), window, TimeUnit.MILLISECONDS);
+            } catch (final RejectedExecutionException ree) {
+                flush(apiId);
+            }
+        }
+    }
+
+    private void flush(final String apiId) {
+        final PendingEvent pendingEvent = pendingEvents.remove(apiId);
+        if (pendingEvent != null) {
+            final ApiEvent effectiveType = pendingEvent.effectiveType();
+            if (effectiveType == null) {
+                cancelled.increment();
+                logger.debug("Events of the external API id[{}] cancel each other, nothing to do", apiId);
+            } else {
+                emit(effectiveType, pendingEvent.api);
+            }
+        }
+    }
+
+    private void emit(final ApiEvent type, final ApiEntity api) {
+        emitted.increment();
+        sink.accept(type, api);
+    }
+
+    /**
+     * Emits all the pending events immediately, the next received events are emitted without being coalesced.
+     */
+    public void close() {
+        closed = true;
+        final List<String> apiIds = new ArrayList<>(pendingEvents.keySet());
+        apiIds.forEach(this::flush);
+        logger.info("External API event coalescer stopped: received[{}] emitted[{}] saved[{}]",
+                received.sum(), emitted.sum(), getSavedCount());
+    }
+
+    public long getReceivedCount() {
+        return received.sum();
+    }
+
+    public long getEmittedCount() {
+        return emitted.sum();
+    }
+
+    public long getCancelledCount() {
+        return cancelled.sum();
+    }
+
+    /**
+     * @return the number of events that have not been propagated to the external API provider
+     */
+    public long getSavedCount() {
+        return received.sum() - emitted.sum() - pendingEvents.values().stream().mapToLong(pending -> pending.count).sum();
+    }
+
+    private static final class PendingEvent {
+        private final boolean existing;
+        private ApiEvent lastType;
+        private ApiEntity api;
+        private int count;
+
+        private PendingEvent(final ApiEvent type, final ApiEntity api) {
+            // an API that is not deployed yet does not exist on the external API provider
+            this.existing = type != ApiEvent.DEPLOY;
+            merge(type, api);
+        }
+
+        private void merge(final ApiEvent type, final ApiEntity api) {
+            this.lastType = type;
+            this.api = api;
+            this.count++;
+        }
+
+        private ApiEvent effectiveType() {
+            if (lastType == ApiEvent.UNDEPLOY) {
+                return existing ? ApiEvent.UNDEPLOY : null;
+            }
+            return existing ? ApiEvent.UPDATE : ApiEvent.DEPLOY;
+        }
+    }
+}
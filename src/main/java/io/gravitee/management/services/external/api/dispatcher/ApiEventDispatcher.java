@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.dispatcher;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dispatches API lifecycle tasks out of the event manager thread.
+ *
+ * Tasks are routed to a lane according to the API id: each lane is backed by a single worker and a bounded queue,
+ * so tasks of a same API are executed in order while tasks of different APIs run in parallel.
+ *
+ * @author GraviteeSource Team
+ */
+public class ApiEventDispatcher {
+
+    private final Logger logger = LoggerFactory.getLogger(ApiEventDispatcher.class);
+
+    public enum OverflowPolicy {
+        /**
+         * The caller waits until there is room in the lane queue.
+         */
+        BLOCK,
+        /**
+         * The task is dropped and logged.
+         */
+        DISCARD
+    }
+
+    private final ThreadPoolExecutor[] lanes;
+    private final OverflowPolicy overflowPolicy;
+
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public ApiEventDispatcher(final int workers, final int queueCapacity, final OverflowPolicy overflowPolicy) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("The number of dispatcher workers must be greater than 0");
+        }
+        if (queueCapacity < workers) {
+            throw new IllegalArgumentException("The dispatcher queue capacity must be greater or equal to the number of workers");
+        }
+        this.overflowPolicy = overflowPolicy;
+        this.lanes = new ThreadPoolExecutor[workers];
+        final AtomicInteger threadIndex = new AtomicInteger();
+        final int laneCapacity = queueCapacity / workers;
+        for (int i = 0; i < workers; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(laneCapacity),
+                    runnable -> {
+                        final Thread thread = new Thread(runnable, "external-api-dispatcher-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    this::onOverflow);
+        }
+    }
+
+    /**
+     * @return false if the task has been discarded
+     */
+    public boolean dispatch(final String apiId, final Runnable task) {
+        final ThreadPoolExecutor lane = lanes[(apiId.hashCode() & Integer.MAX_VALUE) % lanes.length];
+        try {
+            lane.execute(() -> {
+                try {
+                    task.run();
+                } catch (final Exception ex) {
+                    failed.increment();
+                    logger.error("Error while processing the event of the external API id[{}]", apiId, ex);
+                }
+            });
+        } catch (final RejectedExecutionException ree) {
+            // already counted and logged as discarded
+            return false;
+        }
+        dispatched.increment();
+        return true;
+    }
+
+    /**
+     * @throws RejectedExecutionException if the task has been discarded
+     */
+    private void onOverflow(final Runnable task, final ThreadPoolExecutor lane) {
+        if (lane.isShutdown() || overflowPolicy == OverflowPolicy.DISCARD) {
+            discarded.increment();
+            logger.warn("External API dispatcher queue is full or stopped, event discarded");
+            throw new RejectedExecutionException();
+        }
+        try {
+            lane.getQueue().put(task);
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            discarded.increment();
+            logger.warn("Interrupted while waiting for the external API dispatcher queue, event discarded");
+            throw new RejectedExecutionException(ie);
+        }
+        // the lane may have been stopped while waiting, its worker would then never take the task
+        if (lane.isShutdown() && lane.getQueue().remove(task)) {
+            discarded.increment();
+            logger.warn("External API dispatcher stopped while waiting for room in the queue, event discarded");
+            throw new RejectedExecutionException();
+        }
+    }
+
+    /**
+     * Stops accepting new tasks and waits for the queued ones to complete, up to the given timeout.
+     */
+    public void shutdown(final long timeout, final TimeUnit unit) throws InterruptedException {
+        for (final ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int dropped = 0;
+        for (final ThreadPoolExecutor lane : lanes) {
+            if (!lane.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                final List<Runnable> pending = lane.shutdownNow();
+                dropped += pending.size();
+            }
+        }
+        if (dropped > 0) {
+            discarded.add(dropped);
+            logger.warn("External API dispatcher stopped before draining {} pending event(s)", dropped);
+        }
+        logger.info("External API dispatcher stopped: dispatched[{}] failed[{}] discarded[{}]",
+                dispatched.sum(), failed.sum(), discarded.sum());
+    }
+
+    public int getPendingCount() {
+        int pending = 0;
+        for (final ThreadPoolExecutor lane : lanes) {
+            pending += lane.getQueue().size() + lane.getActiveCount();
+        }
+        return pending;
+    }
+
+    public long getDispatchedCount() {
+        return dispatched.sum();
+    }
+
+    public long getDiscardedCount() {
+        return discarded.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+}
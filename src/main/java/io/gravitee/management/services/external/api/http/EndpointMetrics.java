@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.http;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and errors of the calls to an endpoint of an external API provider.
+ *
+ * @author GraviteeSource Team
+ */
+public class EndpointMetrics {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder clientErrors = new LongAdder();
+    private final LongAdder serverErrors = new LongAdder();
+    private final LongAdder ioErrors = new LongAdder();
+
+    void record(final long millis, final int status) {
+        latency.record(millis);
+        if (status >= 500) {
+            serverErrors.increment();
+        } else if (status >= 400) {
+            clientErrors.increment();
+        }
+    }
+
+    void recordIOError(final long millis) {
+        latency.record(millis);
+        ioErrors.increment();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getClientErrors() {
+        return clientErrors.sum();
+    }
+
+    public long getServerErrors() {
+        return serverErrors.sum();
+    }
+
+    public long getIOErrors() {
+        return ioErrors.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s 4xx[%d] 5xx[%d] io[%d]", latency, getClientErrors(), getServerErrors(), getIOErrors());
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.http;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP client shared by the external API providers, with a sized connection pool, timeouts, JSON (de)serialization
+ * and per endpoint metrics.
+ *
+ * @author GraviteeSource Team
+ */
+public class HttpTransport implements AutoCloseable {
+
+    private final Logger logger = LoggerFactory.getLogger(HttpTransport.class);
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ObjectMapper mapper;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private final ConcurrentMap<String, EndpointMetrics> metrics = new ConcurrentHashMap<>();
+
+    public HttpTransport() {
+        this(new HttpTransportOptions());
+    }
+
+    public HttpTransport(final HttpTransportOptions options) {
+        // the time-to-live bounds the lifetime of a connection, the keep-alive only how long it may stay idle
+        connectionManager = new PoolingHttpClientConnectionManager(options.getTimeToLive(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(options.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(options.getMaxConnectionsPerRoute());
+        // pooled connections idle for more than a second are checked before being reused
+        connectionManager.setValidateAfterInactivity(1000);
+
+        final ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            final long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? Math.min(keepAlive, options.getKeepAlive()) : options.getKeepAlive();
+        };
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(options.getConnectTimeout())
+                        .setSocketTimeout(options.getSocketTimeout())
+                        .setConnectionRequestTimeout(options.getConnectionRequestTimeout())
+                        .build())
+                .build();
+
+        mapper = new ObjectMapper();
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        reader = mapper.reader();
+        writer = mapper.writer();
+    }
+
+    /**
+     * Executes the request, recording its latency and status under the given endpoint name.
+     */
+    public <T> T execute(final String endpoint, final HttpUriRequest request,
+                         final ResponseHandler<? extends T> handler) throws IOException {
+        final EndpointMetrics endpointMetrics = metrics.computeIfAbsent(endpoint, name -> new EndpointMetrics());
+        final long start = System.nanoTime();
+        final boolean[] responded = {false};
+        try {
+            return httpClient.execute(request, response -> {
+                responded[0] = true;
+                endpointMetrics.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                        response.getStatusLine().getStatusCode());
+                return handler.handleResponse(response);
+            });
+        } catch (final IOException ioe) {
+            if (!responded[0]) {
+                endpointMetrics.recordIOError(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            throw ioe;
+        }
+    }
+
+    /**
+     * Deserializes the JSON content of the entity while it is read from the connection.
+     */
+    public <T> T read(final HttpEntity entity, final Class<T> type) throws IOException {
+        try (InputStream content = entity.getContent()) {
+            return reader.forType(type).readValue(content);
+        }
+    }
+
+    public HttpEntity json(final Object value) throws IOException {
+        return new ByteArrayEntity(writer.writeValueAsBytes(value), ContentType.APPLICATION_JSON);
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return mapper;
+    }
+
+    public ObjectReader getReader() {
+        return reader;
+    }
+
+    public ObjectWriter getWriter() {
+        return writer;
+    }
+
+    public Map<String, EndpointMetrics> getMetrics() {
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    @Override
+    public void close() throws IOException {
+        metrics.forEach((endpoint, endpointMetrics) -> logger.info("External API endpoint {}: {}", endpoint, endpointMetrics));
+        httpClient.close();
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.http;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies, recorded in fixed millisecond buckets.
+ *
+ * @author GraviteeSource Team
+ */
+public class LatencyHistogram {
+
+    private static final long[] BUCKETS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, Long.MAX_VALUE};
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS.length];
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(final long millis) {
+        int bucket = 0;
+        while (millis > BUCKETS[bucket]) {
+            bucket++;
+        }
+        counts[bucket].increment();
+        total.increment();
+        sum.add(millis);
+        max.accumulate(millis);
+    }
+
+    public long getCount() {
+        return total.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        final long count = total.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * @return the upper bound (in ms) of the bucket containing the given percentile, the max latency for the last one
+     */
+    public long getPercentile(final double percentile) {
+        final long count = total.sum();
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(percentile / 100 * count);
+        long cumulated = 0;
+        for (int i = 0; i < BUCKETS.length; i++) {
+            cumulated += counts[i].sum();
+            if (cumulated >= rank) {
+                return Math.min(BUCKETS[i], max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count[%d] mean[%.1fms] p50[%dms] p99[%dms] max[%dms]",
+                getCount(), getMean(), getPercentile(50), getPercentile(99), getMax());
+    }
+}
@@ -15,32 +15,44 @@
  */
 package io.gravitee.management.services.external.api.mulesoft;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.JsonNode;
 import io.gravitee.common.util.Maps;
 import io.gravitee.management.services.external.api.APIService;
+import io.gravitee.management.services.external.api.BatchOperationException;
+import io.gravitee.management.services.external.api.ExternalAPIException;
+import io.gravitee.management.services.external.api.auth.TokenProvider;
+import io.gravitee.management.services.external.api.cache.ExpiringCache;
+import io.gravitee.management.services.external.api.http.HttpTransport;
+import io.gravitee.management.services.external.api.http.HttpTransportOptions;
 import io.gravitee.management.services.external.api.mulesoft.model.MuleSoftApiEntity;
 import io.gravitee.management.services.external.api.mulesoft.model.MuleSoftAssetEntity;
 import io.gravitee.management.services.external.api.mulesoft.model.MuleSoftEndpointEntity;
+import io.gravitee.management.services.external.api.state.SyncStateStore;
 import io.gravitee.rest.api.model.api.ApiEntity;
 import io.gravitee.rest.api.model.parameters.Key;
 import io.gravitee.rest.api.service.ParameterService;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.*;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.util.List;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import static java.lang.String.format;
 import static org.apache.http.HttpHeaders.*;
@@ -49,7 +61,7 @@ import static org.apache.http.HttpHeaders.*;
  * @author Azize ELAMRANI (azize.elamrani at graviteesource.com)
  * @author GraviteeSource Team
  */
-public class MuleSoftAPIService implements APIService {
+public class MuleSoftAPIService implements APIService, Closeable {
 
     private final Logger logger = LoggerFactory.getLogger(MuleSoftAPIService.class);
 
@@ -63,18 +75,26 @@ public class MuleSoftAPIService implements APIService {
     private String organization;
     @Value("${services.external-api.mulesoft.environment:#{null}}")
     private String environment;
+    @Value("${services.external-api.mulesoft.batch-parallelism:4}")
+    private int batchParallelism = 4;
 
     @Autowired
     private ParameterService parameterService;
+    @Autowired(required = false)
+    private SyncStateStore syncStateStore = new SyncStateStore();
+    @Autowired(required = false)
+    private ExpiringCache<String, String> externalIdCache = new ExpiringCache<>("MuleSoft API id", 1000, 1, TimeUnit.HOURS);
 
-    private String authorization;
-    private final CloseableHttpClient httpClient;
-    private final ObjectMapper mapper;
+    @Autowired(required = false)
+    private HttpTransportOptions transportOptions = new HttpTransportOptions();
+
+    private volatile HttpTransport transport;
+    private ExecutorService batchExecutor;
+
+    private final TokenProvider tokenProvider;
 
     public MuleSoftAPIService() {
-        httpClient = HttpClients.createDefault();
-        mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        tokenProvider = new TokenProvider(name(), this::login);
     }
 
     @Override
@@ -84,188 +104,392 @@ public class MuleSoftAPIService implements APIService {
 
     @Override
     public void startAPI(final ApiEntity api) {
-        connect();
-        if (existsAPI(api)) {
-            updateAPI(api);
+        final MuleSoftAssetEntity muleSoftAssetEntity = convert(api);
+        final MuleSoftApiEntity muleSoftApiEntity = convert(api, muleSoftAssetEntity);
+        final String hash = hash(muleSoftAssetEntity, muleSoftApiEntity);
+        final SyncStateStore.SyncState state = syncStateStore.get(api.getId());
+        if (state != null && state.getHash().equals(hash)) {
+            logger.debug("API '{}' is unchanged since its last synchronization with MuleSoft", api.getName());
+            return;
+        }
+        if (state != null && state.getExternalId() != null) {
+            if (updateAPI(muleSoftApiEntity, state.getExternalId())) {
+                syncStateStore.put(api.getId(), hash, state.getExternalId());
+                return;
+            }
+            // the API has been removed from MuleSoft since its last synchronization
+            syncStateStore.remove(api.getId());
+            externalIdCache.invalidate(api.getId());
+        }
+        final String muleSoftAPIId = getMuleSoftAPIId(api);
+        // a 404 on update tells the API no longer exists, no need to check it first
+        if (muleSoftAPIId != null && updateAPI(muleSoftApiEntity, muleSoftAPIId)) {
+            syncStateStore.put(api.getId(), hash, muleSoftAPIId);
+            return;
+        }
+        externalIdCache.invalidate(api.getId());
+        final String createdAPIId = createAPI(api, muleSoftAssetEntity);
+        if (createdAPIId == null) {
+            syncStateStore.put(api.getId(), hash, null);
         } else {
-            createAPI(api);
+            externalIdCache.put(api.getId(), createdAPIId);
+            syncStateStore.put(api.getId(), hash, createdAPIId);
         }
     }
 
     @Override
     public void stopAPI(final ApiEntity api) {
-        connect();
         deleteAPI(api);
+        externalIdCache.invalidate(api.getId());
+        syncStateStore.remove(api.getId());
     }
 
-    private void connect() {
-        if (authorization == null) {
-            try {
-                final HttpEntityEnclosingRequestBase request = new HttpPost(endpoint + "/accounts/login");
-                request.setHeader(ACCEPT, "application/json");
-                request.setHeader(CONTENT_TYPE, "application/json");
-
-                request.setEntity(new StringEntity(mapper.writeValueAsString(
-                        Maps.builder().put("username", username).put("password", password).build()),
-                        ContentType.APPLICATION_JSON));
-
-                httpClient.execute(request, response -> {
-                    int status = response.getStatusLine().getStatusCode();
-                    final String entity = EntityUtils.toString(response.getEntity());
-                    if (status < 200 || status >= 300) {
-                        logger.error(format("Error while trying to connect to MuleSoft API: Status[%s] - %s",
-                                status, entity));
-                    } else {
-                        final Map entityMap = mapper.readValue(entity, Map.class);
-                        authorization = entityMap.get("token_type") + " " + entityMap.get("access_token");
-                    }
-                    return null;
-                });
-            } catch (final IOException ioe) {
-                logger.error("Error while trying to connect to the MuleSoft API", ioe);
+    @Override
+    public void forgetAPI(final String apiId) {
+        externalIdCache.invalidate(apiId);
+        syncStateStore.remove(apiId);
+    }
+
+    /**
+     * Starts the given APIs concurrently, up to the batch parallelism.
+     */
+    @Override
+    public void startAPIs(final Collection<ApiEntity> apis) {
+        executeAll("start", apis, this::startAPI);
+    }
+
+    /**
+     * Stops the given APIs concurrently, up to the batch parallelism.
+     */
+    @Override
+    public void stopAPIs(final Collection<ApiEntity> apis) {
+        executeAll("stop", apis, this::stopAPI);
+    }
+
+    private void executeAll(final String action, final Collection<ApiEntity> apis, final Consumer<ApiEntity> operation) {
+        if (apis.isEmpty()) {
+            return;
+        }
+        final ExecutorService executor = batchExecutor();
+        final Map<String, Future<?>> futures = new LinkedHashMap<>();
+        try {
+            for (final ApiEntity api : apis) {
+                futures.put(api.getId(), executor.submit(() -> operation.accept(api)));
+            }
+            final Map<String, RuntimeException> failures = new LinkedHashMap<>();
+            for (final Map.Entry<String, Future<?>> future : futures.entrySet()) {
+                try {
+                    future.getValue().get();
+                } catch (final ExecutionException ee) {
+                    failures.put(future.getKey(), ee.getCause() instanceof RuntimeException ?
+                            (RuntimeException) ee.getCause() :
+                            new ExternalAPIException(format("Error while trying to %s the MuleSoft API", action), ee.getCause()));
+                } catch (final CancellationException ce) {
+                    failures.put(future.getKey(), new ExternalAPIException(
+                            format("Unable to %s the MuleSoft API, the service is closed", action), ce));
+                }
+            }
+            if (!failures.isEmpty()) {
+                throw new BatchOperationException(format("Unable to %s the APIs on MuleSoft", action), failures);
             }
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            futures.values().forEach(future -> future.cancel(true));
+            throw new ExternalAPIException(format("Interrupted while trying to %s the MuleSoft APIs", action), ie);
+        } catch (final RejectedExecutionException ree) {
+            futures.values().forEach(future -> future.cancel(true));
+            throw new ExternalAPIException(format("Unable to %s the MuleSoft APIs, the service is closed", action), ree);
+        }
+    }
+
+    /**
+     * @return the executor shared by all the batches, created on first use as the parallelism is injected
+     */
+    private synchronized ExecutorService batchExecutor() {
+        if (batchExecutor == null) {
+            final AtomicInteger threadIndex = new AtomicInteger();
+            batchExecutor = Executors.newFixedThreadPool(Math.max(1, batchParallelism), runnable -> {
+                final Thread thread = new Thread(runnable, "mulesoft-batch-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
         }
+        return batchExecutor;
     }
 
-    private boolean existsAPI(final ApiEntity api) {
+    @Override
+    public List<String> listAPIs(final int page, final int size) {
         try {
-            return existsMuleSoftAPI(getMuleSoftAPIId(api));
+            final HttpRequestBase request = new HttpGet(endpoint +
+                    format("/apimanager/api/v1/organizations/%s/environments/%s/apis?offset=%d&limit=%d",
+                            organization, environment, page * size, size));
+            request.setHeader(ACCEPT, "application/json");
+            return execute("api-list", request, response -> {
+                checkStatus(response, "list MuleSoft APIs");
+                final JsonNode assets = transport().read(response.getEntity(), JsonNode.class).path("assets");
+                final List<String> apiIds = new ArrayList<>(assets.size());
+                for (final JsonNode asset : assets) {
+                    // the assets are created with the id of the Gravitee API
+                    final String apiId = asset.path("assetId").asText();
+                    apiIds.add(apiId);
+                    final JsonNode instances = asset.path("apis");
+                    if (instances.size() > 0) {
+                        externalIdCache.put(apiId, instances.get(0).path("id").asText());
+                    }
+                }
+                return apiIds;
+            });
         } catch (final IOException ioe) {
-            logger.error("Error while trying to call the MuleSoft API", ioe);
-            throw new IllegalStateException("Error while trying to check if the MuleSoft API exists", ioe);
+            throw new ExternalAPIException("Error while trying to list the MuleSoft APIs", ioe);
         }
     }
 
-    private String getMuleSoftAPIId(ApiEntity api) throws IOException {
-        final HttpRequestBase request = new HttpGet(endpoint +
-                format("/exchange/api/v1/assets/%s/%s?includeSnapshots=true", organization, api.getId()));
-        request.setHeader(AUTHORIZATION, authorization);
+    /**
+     * Stops the background refresh of the MuleSoft token and the batch workers, and closes the transport created by
+     * this service.
+     */
+    @Override
+    public void close() {
+        tokenProvider.close();
+        synchronized (this) {
+            if (batchExecutor != null) {
+                // the callers waiting for the queued operations are released
+                batchExecutor.shutdownNow().forEach(task -> ((Future<?>) task).cancel(false));
+            }
+            if (transport != null) {
+                try {
+                    transport.close();
+                } catch (final IOException ioe) {
+                    logger.warn("Unable to close the {} HTTP transport", name(), ioe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the transport, created on first use so that no connection pool is opened until MuleSoft is called.
+     */
+    private HttpTransport transport() {
+        HttpTransport current = transport;
+        if (current == null) {
+            synchronized (this) {
+                current = transport;
+                if (current == null) {
+                    transport = current = new HttpTransport(transportOptions);
+                }
+            }
+        }
+        return current;
+    }
+
+    private TokenProvider.Token login() throws IOException {
+        final HttpEntityEnclosingRequestBase request = new HttpPost(endpoint + "/accounts/login");
         request.setHeader(ACCEPT, "application/json");
         request.setHeader(CONTENT_TYPE, "application/json");
-        return httpClient.execute(request, response -> {
-            if (response.getStatusLine().getStatusCode() == 200) {
-                final MuleSoftAssetEntity entity = mapper.readValue(EntityUtils.toString(response.getEntity()), MuleSoftAssetEntity.class);
-                final List<MuleSoftAssetEntity> instances = entity.getInstances();
-                if (!instances.isEmpty()) {
-                    return instances.iterator().next().getId();
-                }
+
+        request.setEntity(transport().json(
+                Maps.builder().put("username", username).put("password", password).build()));
+
+        return transport().execute("login", request, response -> {
+            int status = response.getStatusLine().getStatusCode();
+            if (status < 200 || status >= 300) {
+                throw new IOException(format("Error while trying to connect to MuleSoft API: Status[%s] - %s",
+                        status, EntityUtils.toString(response.getEntity())));
             }
-            return null;
+            final Map entityMap = transport().read(response.getEntity(), Map.class);
+            final Object expiresIn = entityMap.get("expires_in");
+            return new TokenProvider.Token(entityMap.get("token_type") + " " + entityMap.get("access_token"),
+                    expiresIn instanceof Number ? ((Number) expiresIn).longValue() : -1, TimeUnit.SECONDS);
         });
     }
 
-    private boolean existsMuleSoftAPI(final String apiId) throws IOException {
-        final HttpRequestBase request = new HttpGet(endpoint +
-                format("/apimanager/api/v1/organizations/%s/environments/%s/apis/%s",
-                        organization, environment, apiId));
+    /**
+     * Executes the request with the current authorization, renewing it and retrying once if it is rejected.
+     */
+    private <T> T execute(final String endpointName, final HttpRequestBase request,
+                          final ResponseHandler<? extends T> handler) throws IOException {
+        final String authorization = tokenProvider.getAuthorization();
         request.setHeader(AUTHORIZATION, authorization);
+        try {
+            return transport().execute(endpointName, request, response -> {
+                if (response.getStatusLine().getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+                    throw new UnauthorizedException();
+                }
+                return handler.handleResponse(response);
+            });
+        } catch (final UnauthorizedException ue) {
+            logger.debug("MuleSoft authorization rejected, renewing it");
+            request.reset();
+            request.setHeader(AUTHORIZATION, tokenProvider.renew(authorization));
+            return transport().execute(endpointName, request, handler);
+        }
+    }
+
+    /**
+     * @throws ExternalAPIException if the response status is not a success
+     */
+    private static void checkStatus(final HttpResponse response, final String action) throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        if (status < 200 || status >= 300) {
+            throw new ExternalAPIException(format("Error while trying to %s: Status[%s] - %s",
+                    action, status, EntityUtils.toString(response.getEntity())), status);
+        }
+    }
+
+    /**
+     * @return the id of the MuleSoft API instance of the given API, looked up from the cache first
+     */
+    private String getMuleSoftAPIId(final ApiEntity api) {
+        final String cachedAPIId = externalIdCache.get(api.getId());
+        if (cachedAPIId != null) {
+            return cachedAPIId;
+        }
+        try {
+            final String muleSoftAPIId = getMuleSoftAssetInstanceId(api);
+            externalIdCache.put(api.getId(), muleSoftAPIId);
+            return muleSoftAPIId;
+        } catch (final IOException ioe) {
+            throw new ExternalAPIException("Error while trying to get the MuleSoft API id", ioe);
+        }
+    }
+
+    private String getMuleSoftAssetInstanceId(final ApiEntity api) throws IOException {
+        final HttpRequestBase request = new HttpGet(endpoint +
+                format("/exchange/api/v1/assets/%s/%s?includeSnapshots=true", organization, api.getId()));
         request.setHeader(ACCEPT, "application/json");
         request.setHeader(CONTENT_TYPE, "application/json");
-        return httpClient.execute(request, response -> response.getStatusLine().getStatusCode() == 200);
+        return execute("asset-lookup", request, response -> {
+            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+                return null;
+            }
+            checkStatus(response, "get MuleSoft asset");
+            final MuleSoftAssetEntity entity = transport().read(response.getEntity(), MuleSoftAssetEntity.class);
+            final List<MuleSoftAssetEntity> instances = entity.getInstances();
+            if (instances != null && !instances.isEmpty()) {
+                return instances.iterator().next().getId();
+            }
+            return null;
+        });
     }
 
-    private void createAPI(final ApiEntity api) {
+    /**
+     * @return the id of the created MuleSoft API, null if it is unknown
+     */
+    private String createAPI(final ApiEntity api, final MuleSoftAssetEntity muleSoftAssetEntity) {
         try {
             final HttpEntityEnclosingRequestBase request = new HttpPost(endpoint + "/exchange/api/v1/assets");
-            request.setHeader(AUTHORIZATION, authorization);
-            final MuleSoftAssetEntity muleSoftAssetEntity = convert(api);
             request.setEntity(getMultipartData(muleSoftAssetEntity));
-            httpClient.execute(request, response -> {
-                int status = response.getStatusLine().getStatusCode();
-                if (status < 200 || status >= 300) {
-                    if (status == 409) {
-                        createMuleSoftAPI(api, muleSoftAssetEntity);
-                    } else {
-                        logger.error(format("Error while trying to create MuleSoft asset: Status[%s] - %s",
-                                status, EntityUtils.toString(response.getEntity())));
-                    }
-                } else {
-                    createMuleSoftAPI(api, muleSoftAssetEntity);
+            execute("asset-create", request, response -> {
+                // the asset may already exist if the API has been deleted from MuleSoft
+                if (response.getStatusLine().getStatusCode() != HttpStatus.SC_CONFLICT) {
+                    checkStatus(response, "create MuleSoft asset");
                 }
                 return null;
             });
+            return createMuleSoftAPI(api, muleSoftAssetEntity);
         } catch (final IOException ioe) {
-            logger.error("Error while trying to call the MuleSoft API", ioe);
+            throw new ExternalAPIException("Error while trying to create the MuleSoft API", ioe);
         }
     }
 
-    private void createMuleSoftAPI(final ApiEntity api, final MuleSoftAssetEntity muleSoftAssetEntity) throws IOException {
+    private String createMuleSoftAPI(final ApiEntity api, final MuleSoftAssetEntity muleSoftAssetEntity) throws IOException {
         final HttpEntityEnclosingRequestBase request = new HttpPost(endpoint +
                 format("/apimanager/api/v1/organizations/%s/environments/%s/apis", organization, environment));
-        request.setHeader(AUTHORIZATION, authorization);
         request.setHeader(ACCEPT, "application/json");
         request.setHeader(CONTENT_TYPE, "application/json");
-        request.setEntity(new StringEntity(mapper.writeValueAsString(convert(api, muleSoftAssetEntity)), ContentType.APPLICATION_JSON));
+        request.setEntity(transport().json(convert(api, muleSoftAssetEntity)));
 
-        httpClient.execute(request, response -> {
-            int status = response.getStatusLine().getStatusCode();
-            if (status < 200 || status >= 300) {
-                logger.error(format("Error while trying to create MuleSoft API: Status[%s] - %s",
-                        status, EntityUtils.toString(response.getEntity())));
-            } else {
-                logger.info(format("API '%s' created with success on MuleSoft", api.getName()));
+        return execute("api-create", request, response -> {
+            checkStatus(response, "create MuleSoft API");
+            logger.info(format("API '%s' created with success on MuleSoft", api.getName()));
+            final HttpEntity entity = response.getEntity();
+            if (entity == null || entity.getContentLength() == 0) {
+                return null;
             }
-            return null;
+            final Object id = transport().read(entity, Map.class).get("id");
+            return id == null ? null : id.toString();
         });
     }
 
-    private HttpEntity getMultipartData(final MuleSoftAssetEntity muleSoftAssetEntity) throws IOException {
+    HttpEntity getMultipartData(final MuleSoftAssetEntity muleSoftAssetEntity) throws IOException {
         final MultipartEntityBuilder multipartEntityBuilder = MultipartEntityBuilder.create();
-        final Map<String, String> values = mapper.readValue(mapper.writeValueAsString(muleSoftAssetEntity), Map.class);
-        for (final Map.Entry<String, String> entry : values.entrySet()) {
-            final String value = entry.getValue();
+        final Map<String, Object> values = transport().getObjectMapper().convertValue(muleSoftAssetEntity, Map.class);
+        for (final Map.Entry<String, Object> entry : values.entrySet()) {
+            final Object value = entry.getValue();
             if (value != null) {
-                multipartEntityBuilder.addTextBody(entry.getKey(), value);
+                multipartEntityBuilder.addTextBody(entry.getKey(), value.toString());
             }
         }
         return multipartEntityBuilder.build();
     }
 
-    private void updateAPI(final ApiEntity api) {
+    /**
+     * Updates the MuleSoft API instance with the whole representation of the API, so the instance label and the
+     * endpoint are updated along with the asset.
+     *
+     * @return true if the MuleSoft API has been updated, false if it does not exist
+     */
+    private boolean updateAPI(final MuleSoftApiEntity muleSoftApiEntity, final String muleSoftAPIId) {
         try {
             final HttpEntityEnclosingRequestBase request = new HttpPatch(endpoint +
                     format("/apimanager/api/v1/organizations/%s/environments/%s/apis/%s",
-                            organization, environment, getMuleSoftAPIId(api)));
-            request.setHeader(AUTHORIZATION, authorization);
+                            organization, environment, muleSoftAPIId));
             request.setHeader(ACCEPT, "application/json");
             request.setHeader(CONTENT_TYPE, "application/json");
-            request.setEntity(new StringEntity(mapper.writeValueAsString(convert(api)), ContentType.APPLICATION_JSON));
-            httpClient.execute(request, response -> {
-                int status = response.getStatusLine().getStatusCode();
-                if (status < 200 || status >= 300) {
-                    logger.error(format("Error while trying to update MuleSoft API: Status[%s] - %s",
-                            status, EntityUtils.toString(response.getEntity())));
+            request.setEntity(transport().json(muleSoftApiEntity));
+            return execute("api-update", request, response -> {
+                if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+                    logger.debug("MuleSoft API '{}' not found", muleSoftAPIId);
+                    return false;
                 }
-                return null;
+                checkStatus(response, "update MuleSoft API");
+                return true;
             });
         } catch (final IOException ioe) {
-            logger.error("Error while trying to call the MuleSoft API", ioe);
+            throw new ExternalAPIException("Error while trying to update the MuleSoft API", ioe);
         }
     }
 
     private void deleteAPI(final ApiEntity api) {
-        if (existsAPI(api)) {
+        final String muleSoftAPIId = getMuleSoftAPIId(api);
+        if (muleSoftAPIId != null) {
             try {
                 final HttpRequestBase request = new HttpDelete(endpoint +
                         format("/apimanager/api/v1/organizations/%s/environments/%s/apis/%s",
-                                organization, environment, getMuleSoftAPIId(api)));
-                request.setHeader(AUTHORIZATION, authorization);
+                                organization, environment, muleSoftAPIId));
                 request.setHeader(ACCEPT, "application/json");
-                httpClient.execute(request, response -> {
-                    int status = response.getStatusLine().getStatusCode();
-                    if (status < 200 || status >= 300) {
-                        logger.error(format("Error while trying to delete MuleSoft API: Status[%s] - %s",
-                                status, EntityUtils.toString(response.getEntity())));
+                execute("api-delete", request, response -> {
+                    if (response.getStatusLine().getStatusCode() != HttpStatus.SC_NOT_FOUND) {
+                        checkStatus(response, "delete MuleSoft API");
                     }
                     return null;
                 });
             } catch (final IOException ioe) {
-                logger.error("Error while trying to call the MuleSoft API", ioe);
+                throw new ExternalAPIException("Error while trying to delete the MuleSoft API", ioe);
             }
         }
     }
 
-    private MuleSoftAssetEntity convert(final ApiEntity api) {
+    /**
+     * Computes the hash of the representation pushed to MuleSoft, including the target of the synchronization.
+     */
+    private String hash(final MuleSoftAssetEntity muleSoftAssetEntity, final MuleSoftApiEntity muleSoftApiEntity) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(format("%s/%s/%s", endpoint, organization, environment).getBytes(StandardCharsets.UTF_8));
+            digest.update(transport().getWriter().writeValueAsBytes(muleSoftAssetEntity));
+            digest.update(transport().getWriter().writeValueAsBytes(muleSoftApiEntity));
+            final StringBuilder hash = new StringBuilder();
+            for (final byte b : digest.digest()) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (final NoSuchAlgorithmException | IOException ex) {
+            throw new IllegalStateException("Error while trying to hash the MuleSoft API", ex);
+        }
+    }
+
+    MuleSoftAssetEntity convert(final ApiEntity api) {
         final MuleSoftAssetEntity muleSoftAssetEntity = new MuleSoftAssetEntity();
         muleSoftAssetEntity.setAssetId(api.getId());
         muleSoftAssetEntity.setOrganizationId(organization);
@@ -277,7 +501,7 @@ public class MuleSoftAPIService implements APIService {
         return muleSoftAssetEntity;
     }
 
-    private MuleSoftApiEntity convert(final ApiEntity api, final MuleSoftAssetEntity muleSoftAssetEntity) {
+    MuleSoftApiEntity convert(final ApiEntity api, final MuleSoftAssetEntity muleSoftAssetEntity) {
         final MuleSoftApiEntity muleSoftApiEntity = new MuleSoftApiEntity();
         muleSoftApiEntity.setSpec(muleSoftAssetEntity);
 
@@ -293,4 +517,7 @@ public class MuleSoftAPIService implements APIService {
         muleSoftApiEntity.setEndpoint(endpoint);
         return muleSoftApiEntity;
     }
+
+    private static final class UnauthorizedException extends ClientProtocolException {
+    }
 }
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.reconciliation;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the rate of the operations applied to an external API provider, each operation making one
+ * or several calls to it.
+ *
+ * @author GraviteeSource Team
+ */
+public class RateLimiter {
+
+    private final double permitsPerNano;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param permitsPerSecond the sustained rate, 0 or less to disable the limitation
+     * @param burst the maximum number of permits that can be acquired at once after an idle period
+     */
+    public RateLimiter(final double permitsPerSecond, final int burst) {
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, burst);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Waits until a permit is available.
+     */
+    public void acquire() throws InterruptedException {
+        if (permitsPerNano <= 0) {
+            return;
+        }
+        final long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes a permit, possibly in advance, and returns the time to wait before using it.
+     */
+    private synchronized long reserve() {
+        final long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens / permitsPerNano);
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.reconciliation;
+
+import io.gravitee.common.component.Lifecycle;
+import io.gravitee.management.services.external.api.APIService;
+import io.gravitee.management.services.external.api.dispatcher.ApiEventDispatcher;
+import io.gravitee.management.services.external.api.sharding.ShardingTagsMatcher;
+import io.gravitee.management.services.external.api.state.SyncStateStore;
+import io.gravitee.rest.api.model.api.ApiEntity;
+import io.gravitee.rest.api.service.ApiService;
+import io.gravitee.rest.api.service.exceptions.ApiNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Brings the external API provider in line with the APIs deployed on Gravitee: the deployed APIs matching the sharding
+ * tags are created or updated and the ones that are no longer deployed are deleted.
+ *
+ * Only the APIs known by Gravitee or previously synchronized by this node are deleted from the provider.
+ *
+ * The operations go through the lanes of the {@link ApiEventDispatcher}, so they are serialized with the events of
+ * the same API, at most {@code parallelism} of them being in flight at a time.
+ *
+ * @author GraviteeSource Team
+ */
+public class ReconciliationEngine {
+
+    private final Logger logger = LoggerFactory.getLogger(ReconciliationEngine.class);
+
+    private enum Action {
+        CREATE, UPDATE, DELETE
+    }
+
+    private final APIService apiService;
+    private final ApiService graviteeApiService;
+    private final Supplier<ShardingTagsMatcher> shardingTagsMatcher;
+    private final SyncStateStore syncStateStore;
+    private final ApiEventDispatcher dispatcher;
+    private final int parallelism;
+    private final int pageSize;
+    private final RateLimiter rateLimiter;
+
+    private volatile ReconciliationReport lastReport;
+
+    public ReconciliationEngine(final APIService apiService, final ApiService graviteeApiService,
+                                final Supplier<ShardingTagsMatcher> shardingTagsMatcher,
+                                final SyncStateStore syncStateStore, final ApiEventDispatcher dispatcher,
+                                final int parallelism, final int pageSize, final RateLimiter rateLimiter) {
+        this.apiService = apiService;
+        this.graviteeApiService = graviteeApiService;
+        this.shardingTagsMatcher = shardingTagsMatcher;
+        this.syncStateStore = syncStateStore;
+        this.dispatcher = dispatcher;
+        this.parallelism = parallelism;
+        this.pageSize = pageSize;
+        this.rateLimiter = rateLimiter;
+    }
+
+    public ReconciliationReport reconcile() throws InterruptedException {
+        final ReconciliationReport report = new ReconciliationReport();
+        lastReport = report;
+        logger.info("Reconciliation of the external APIs with {} started", apiService.name());
+
+        final ShardingTagsMatcher matcher = shardingTagsMatcher.get();
+        final Set<String> knownIds = new HashSet<>();
+        final Set<String> deployedIds = new HashSet<>();
+        for (final ApiEntity api : graviteeApiService.findAll()) {
+            knownIds.add(api.getId());
+            if (isDeployed(api, matcher)) {
+                deployedIds.add(api.getId());
+            }
+        }
+        if (syncStateStore != null) {
+            knownIds.addAll(syncStateStore.getApiIds());
+        }
+
+        final Set<String> externalIds = new HashSet<>();
+        for (int page = 0; ; page++) {
+            final List<String> ids = apiService.listAPIs(page, pageSize);
+            externalIds.addAll(ids);
+            if (ids.size() < pageSize) {
+                break;
+            }
+        }
+
+        final Map<String, Action> operations = new LinkedHashMap<>();
+        deployedIds.forEach(id -> operations.put(id, externalIds.contains(id) ? Action.UPDATE : Action.CREATE));
+        externalIds.stream()
+                .filter(id -> !deployedIds.contains(id) && knownIds.contains(id))
+                .forEach(id -> operations.put(id, Action.DELETE));
+        report.setTotal(operations.size());
+        logger.info("Reconciliation with {}: {} deployed API(s), {} external API(s), {} operation(s) to apply",
+                apiService.name(), deployedIds.size(), externalIds.size(), operations.size());
+
+        final Semaphore inFlight = new Semaphore(parallelism);
+        final CountDownLatch remaining = new CountDownLatch(operations.size());
+        for (final Map.Entry<String, Action> operation : operations.entrySet()) {
+            final String apiId = operation.getKey();
+            rateLimiter.acquire();
+            inFlight.acquire();
+            final boolean dispatched = dispatcher.dispatch(apiId, () -> {
+                try {
+                    apply(report, apiId, operation.getValue());
+                } finally {
+                    inFlight.release();
+                    remaining.countDown();
+                }
+            });
+            if (!dispatched) {
+                inFlight.release();
+                remaining.countDown();
+                report.failed().incrementAndGet();
+            }
+        }
+        while (!remaining.await(10, TimeUnit.SECONDS)) {
+            logger.info("Reconciliation with {} in progress: {}", apiService.name(), report);
+        }
+        report.complete();
+        logger.info("Reconciliation with {} done: {}", apiService.name(), report);
+        return report;
+    }
+
+    /**
+     * Applies the operation from the lane of the API, once the events received for it before have been handled.
+     * The API is read again as these events may have changed it since the start of the run.
+     */
+    private void apply(final ReconciliationReport report, final String apiId, final Action action) {
+        try {
+            final ApiEntity api = findApi(apiId);
+            final boolean deployed = api != null && isDeployed(api, shardingTagsMatcher.get());
+            if (deployed == (action == Action.DELETE)) {
+                logger.debug("The external API id[{}] changed during the reconciliation, skipping it", apiId);
+                report.skipped().incrementAndGet();
+                return;
+            }
+            switch (action) {
+                case CREATE:
+                    // the API may have been synchronized before being removed from the provider: its unchanged
+                    // synchronization state would skip it
+                    apiService.forgetAPI(apiId);
+                    apiService.startAPI(api);
+                    report.created().incrementAndGet();
+                    break;
+                case UPDATE:
+                    apiService.startAPI(api);
+                    report.updated().incrementAndGet();
+                    break;
+                case DELETE:
+                    if (api == null) {
+                        final ApiEntity deletedApi = new ApiEntity();
+                        deletedApi.setId(apiId);
+                        apiService.stopAPI(deletedApi);
+                    } else {
+                        apiService.stopAPI(api);
+                    }
+                    report.deleted().incrementAndGet();
+                    break;
+            }
+        } catch (final Exception ex) {
+            report.failed().incrementAndGet();
+            logger.error("Error while reconciling the external API id[{}]", apiId, ex);
+        }
+    }
+
+    private ApiEntity findApi(final String apiId) {
+        try {
+            return graviteeApiService.findById(apiId);
+        } catch (final ApiNotFoundException anfe) {
+            return null;
+        }
+    }
+
+    private static boolean isDeployed(final ApiEntity api, final ShardingTagsMatcher matcher) {
+        return api.getState() == Lifecycle.State.STARTED && matcher.matches(api.getTags());
+    }
+
+    /**
+     * @return the report of the current or last run, null if none has been started
+     */
+    public ReconciliationReport getLastReport() {
+        return lastReport;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.reconciliation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress and outcome of a reconciliation run.
+ *
+ * @author GraviteeSource Team
+ */
+public class ReconciliationReport {
+
+    private final long startedAt = System.currentTimeMillis();
+    private long duration = -1;
+    private int total;
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger updated = new AtomicInteger();
+    private final AtomicInteger deleted = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    void setTotal(int total) {
+        this.total = total;
+    }
+
+    void complete() {
+        this.duration = System.currentTimeMillis() - startedAt;
+    }
+
+    AtomicInteger created() {
+        return created;
+    }
+
+    AtomicInteger updated() {
+        return updated;
+    }
+
+    AtomicInteger deleted() {
+        return deleted;
+    }
+
+    AtomicInteger skipped() {
+        return skipped;
+    }
+
+    AtomicInteger failed() {
+        return failed;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * @return the duration of the run in milliseconds, -1 while it is running
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getProcessed() {
+        return created.get() + updated.get() + deleted.get() + skipped.get() + failed.get();
+    }
+
+    public int getCreated() {
+        return created.get();
+    }
+
+    public int getUpdated() {
+        return updated.get();
+    }
+
+    public int getDeleted() {
+        return deleted.get();
+    }
+
+    /**
+     * @return the number of operations left out because the API changed since the start of the run
+     */
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("processed[%d/%d] created[%d] updated[%d] deleted[%d] skipped[%d] failed[%d] duration[%dms]",
+                getProcessed(), total, getCreated(), getUpdated(), getDeleted(), getSkipped(), getFailed(), duration);
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops calling an unhealthy external API provider after a number of consecutive failures.
+ *
+ * Once open, the calls are rejected until the open duration has elapsed. A single probe call is then allowed: the
+ * circuit is closed again if it succeeds and reopened otherwise.
+ *
+ * @author GraviteeSource Team
+ */
+public class CircuitBreaker {
+
+    private final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final Runnable onClose;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean probing;
+
+    /**
+     * @param onClose called, outside of the circuit breaker lock, each time the circuit is closed again
+     */
+    public CircuitBreaker(final String name, final int failureThreshold, final long openDuration,
+                          final TimeUnit unit, final Runnable onClose) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = unit.toNanos(openDuration);
+        this.onClose = onClose;
+    }
+
+    /**
+     * @return true if the call is permitted, in which case exactly one of {@link #onSuccess()}, {@link #onFailure()}
+     * or {@link #release()} must follow
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probing = true;
+                return true;
+            default:
+                if (probing) {
+                    return false;
+                }
+                probing = true;
+                return true;
+        }
+    }
+
+    /**
+     * The provider has answered the call.
+     */
+    public void onSuccess() {
+        final boolean closed;
+        synchronized (this) {
+            closed = state != State.CLOSED;
+            state = State.CLOSED;
+            failures = 0;
+            probing = false;
+        }
+        if (closed) {
+            logger.info("Circuit breaker of {} closed", name);
+            onClose.run();
+        }
+    }
+
+    /**
+     * The provider has failed to answer the call.
+     */
+    public synchronized void onFailure() {
+        probing = false;
+        if (state == State.HALF_OPEN || ++failures >= failureThreshold) {
+            if (state != State.OPEN) {
+                logger.warn("Circuit breaker of {} opened after {} consecutive failure(s)", name, failures);
+            }
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * The call has failed without telling anything about the health of the provider.
+     */
+    public synchronized void release() {
+        probing = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
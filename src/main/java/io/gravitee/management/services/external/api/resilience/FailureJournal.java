@@ -0,0 +1,253 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Append-only journal of the operations which could not be performed on the external API provider, so they can be
+ * replayed later, including after a restart.
+ *
+ * Each line is either an operation ({@code START} or {@code STOP} and the API id) or the acknowledgement of the
+ * operations of an API ({@code ACK} and the API id). The API itself is not journaled: it is read again from Gravitee
+ * when the operation is replayed. Only the last operation of each API is kept pending, and the file is rewritten with
+ * the pending operations only when {@link #compact()} is called.
+ *
+ * @author GraviteeSource Team
+ */
+public class FailureJournal implements Closeable {
+
+    private final Logger logger = LoggerFactory.getLogger(FailureJournal.class);
+
+    private static final char SEPARATOR = '\t';
+    private static final String ACK = "ACK";
+
+    public enum Operation {
+        START, STOP
+    }
+
+    private final Path file;
+    // pending entries by API id, in the order of their last operation
+    private final LinkedHashMap<String, Entry> pending = new LinkedHashMap<>();
+    private FileChannel channel;
+    private int obsoleteLines;
+
+    /**
+     * Creates a journal kept in memory only.
+     */
+    public FailureJournal() {
+        this(null);
+    }
+
+    public FailureJournal(final Path file) {
+        this.file = file;
+        if (file != null) {
+            if (Files.exists(file)) {
+                load();
+            }
+            try {
+                open();
+            } catch (final IOException ioe) {
+                throw new IllegalStateException("Unable to open the external API failure journal " + file, ioe);
+            }
+        }
+    }
+
+    public synchronized void append(final Operation operation, final String apiId) {
+        final Entry entry = new Entry(operation, apiId);
+        if (pending.remove(apiId) != null) {
+            obsoleteLines++;
+        }
+        pending.put(apiId, entry);
+        try {
+            write(operation.name() + SEPARATOR + apiId);
+        } catch (final IOException ioe) {
+            logger.error("Unable to write the {} of the API id[{}] to the failure journal, it will not survive a restart",
+                    operation, apiId, ioe);
+        }
+    }
+
+    /**
+     * Removes the pending operation of the given API, if any.
+     */
+    public synchronized void acknowledge(final String apiId) {
+        if (pending.remove(apiId) == null) {
+            return;
+        }
+        obsoleteLines += 2;
+        try {
+            write(ACK + SEPARATOR + apiId);
+        } catch (final IOException ioe) {
+            logger.error("Unable to acknowledge the API id[{}] in the failure journal", apiId, ioe);
+        }
+    }
+
+    /**
+     * @return true if the given entry is still the pending operation of its API
+     */
+    public synchronized boolean isPending(final Entry entry) {
+        return pending.get(entry.getApiId()) == entry;
+    }
+
+    /**
+     * @return true if an operation of the given API is pending
+     */
+    public synchronized boolean isPending(final String apiId) {
+        return pending.containsKey(apiId);
+    }
+
+    /**
+     * @return the pending operations, in the order they have failed
+     */
+    public synchronized List<Entry> getPendingEntries() {
+        return new ArrayList<>(pending.values());
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Rewrites the journal file with the pending operations only.
+     */
+    public synchronized void compact() {
+        if (channel == null || obsoleteLines == 0) {
+            return;
+        }
+        try {
+            final Path tmpFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            try (FileChannel tmpChannel = FileChannel.open(tmpFile, WRITE, TRUNCATE_EXISTING)) {
+                for (final Entry entry : pending.values()) {
+                    write(tmpChannel, entry.getOperation().name() + SEPARATOR + entry.getApiId());
+                }
+                tmpChannel.force(true);
+            }
+            channel.close();
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            obsoleteLines = 0;
+        } catch (final IOException ioe) {
+            logger.error("Unable to compact the external API failure journal {}", file, ioe);
+        }
+        try {
+            if (!channel.isOpen()) {
+                open();
+            }
+        } catch (final IOException ioe) {
+            channel = null;
+            logger.error("Unable to reopen the external API failure journal {}, the next failures will not survive a restart",
+                    file, ioe);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void load() {
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                obsoleteLines++;
+                final String[] fields = line.split(String.valueOf(SEPARATOR));
+                if (fields.length == 2 && !fields[1].isEmpty()) {
+                    if (ACK.equals(fields[0])) {
+                        pending.remove(fields[1]);
+                        continue;
+                    }
+                    final Operation operation = parseOperation(fields[0]);
+                    if (operation != null) {
+                        pending.remove(fields[1]);
+                        pending.put(fields[1], new Entry(operation, fields[1]));
+                        continue;
+                    }
+                }
+                // a line truncated by a crash while it was written
+                logger.warn("Ignoring the invalid line {} of the failure journal {}", lineNumber, file);
+            }
+        } catch (final IOException ioe) {
+            logger.error("Unable to read the failure journal {} after line {}", file, lineNumber, ioe);
+        }
+        obsoleteLines -= pending.size();
+        logger.info("{} pending operation(s) loaded from the failure journal {}", pending.size(), file);
+    }
+
+    private static Operation parseOperation(final String name) {
+        for (final Operation operation : Operation.values()) {
+            if (operation.name().equals(name)) {
+                return operation;
+            }
+        }
+        return null;
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        channel = FileChannel.open(file, CREATE, WRITE, APPEND, DSYNC);
+    }
+
+    private void write(final String line) throws IOException {
+        if (channel != null) {
+            write(channel, line);
+        }
+    }
+
+    private static void write(final FileChannel channel, final String line) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap((line + '\n').getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public static final class Entry {
+        private final Operation operation;
+        private final String apiId;
+
+        private Entry(final Operation operation, final String apiId) {
+            this.operation = operation;
+            this.apiId = apiId;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public String getApiId() {
+            return apiId;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.resilience;
+
+import io.gravitee.management.services.external.api.APIService;
+import io.gravitee.management.services.external.api.BatchOperationException;
+import io.gravitee.management.services.external.api.ExternalAPIException;
+import io.gravitee.management.services.external.api.resilience.FailureJournal.Operation;
+import io.gravitee.rest.api.model.api.ApiEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Decorates an {@link APIService} to survive the failures of the external API provider.
+ *
+ * The operations failing with a transient error are retried with an exponential backoff. Consecutive failures open
+ * a circuit breaker so the next operations fail fast instead of waiting for the provider. The operations which could
+ * not be performed are written to a {@link FailureJournal} and replayed, in order, when the circuit is closed again,
+ * periodically and once {@link #start(Function) started}. The APIs to start are read again from Gravitee when they
+ * are replayed, so the last version of each API is sent.
+ *
+ * @author GraviteeSource Team
+ */
+public class ResilientAPIService implements APIService, Closeable {
+
+    private final Logger logger = LoggerFactory.getLogger(ResilientAPIService.class);
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final APIService delegate;
+    private final ResilienceOptions options;
+    private final FailureJournal journal;
+    private final CircuitBreaker circuitBreaker;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    // an operation and the replay of a same API must not interleave
+    private final Lock[] locks = new Lock[LOCK_STRIPES];
+    // set once started, nothing is replayed before
+    private volatile Function<String, ApiEntity> apiLoader;
+
+    public ResilientAPIService(final APIService delegate, final ResilienceOptions options, final FailureJournal journal) {
+        this.delegate = delegate;
+        this.options = options;
+        this.journal = journal;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "external-api-journal-replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.circuitBreaker = new CircuitBreaker(delegate.name(), options.getFailureThreshold(),
+                options.getOpenDuration(), TimeUnit.MILLISECONDS, () -> scheduler.execute(this::replay));
+    }
+
+    /**
+     * Starts replaying the journal, right away and then periodically if a replay interval is set.
+     *
+     * @param apiLoader reads the current version of an API to start, returning null if it is no longer deployed so
+     *                  that its start is dropped
+     */
+    public void start(final Function<String, ApiEntity> apiLoader) {
+        this.apiLoader = apiLoader;
+        if (options.getReplayInterval() > 0) {
+            scheduler.scheduleWithFixedDelay(this::replay, 0, options.getReplayInterval(), TimeUnit.MILLISECONDS);
+        } else {
+            scheduler.execute(this::replay);
+        }
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    @Override
+    public void startAPI(final ApiEntity api) {
+        execute(Operation.START, api);
+    }
+
+    @Override
+    public void stopAPI(final ApiEntity api) {
+        execute(Operation.STOP, api);
+    }
+
+    @Override
+    public void startAPIs(final Collection<ApiEntity> apis) {
+        executeAll(Operation.START, apis);
+    }
+
+    @Override
+    public void stopAPIs(final Collection<ApiEntity> apis) {
+        executeAll(Operation.STOP, apis);
+    }
+
+    @Override
+    public List<String> listAPIs(final int page, final int size) {
+        final AtomicReference<List<String>> apiIds = new AtomicReference<>();
+        if (!call(() -> apiIds.set(delegate.listAPIs(page, size)), options.getMaxAttempts())) {
+            throw new ExternalAPIException(String.format("Unable to list the APIs of %s", delegate.name()), -1);
+        }
+        return apiIds.get();
+    }
+
+    @Override
+    public void forgetAPI(final String apiId) {
+        delegate.forgetAPI(apiId);
+    }
+
+    private void execute(final Operation operation, final ApiEntity api) {
+        final Lock lock = lockFor(api.getId());
+        lock.lock();
+        try {
+            if (call(() -> invoke(operation, api), options.getMaxAttempts())) {
+                journal.acknowledge(api.getId());
+            } else {
+                journal.append(operation, api.getId());
+                logger.warn("Unable to {} the API id[{}] on {}, the operation will be replayed later",
+                        operation.name().toLowerCase(), api.getId(), delegate.name());
+            }
+        } catch (final RuntimeException ex) {
+            // the operation supersedes the pending one but can not be replayed
+            journal.acknowledge(api.getId());
+            throw ex;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Performs the operation on the given APIs with a single batch call. The APIs which have a pending operation in
+     * the journal, or which have failed in the batch with a transient error, fall back to the operation of each API,
+     * with retries.
+     *
+     * No lock is held during the batch call: the operations of a same API are serialized by the caller, and the
+     * replay only performs the pending operations of the journal, which are all left out of the batch.
+     */
+    private void executeAll(final Operation operation, final Collection<ApiEntity> apis) {
+        final List<ApiEntity> batch = new ArrayList<>(apis.size());
+        final List<ApiEntity> remaining = new ArrayList<>();
+        for (final ApiEntity api : apis) {
+            (isPending(api.getId()) ? remaining : batch).add(api);
+        }
+        final Map<String, RuntimeException> failures = new LinkedHashMap<>();
+        if (!batch.isEmpty()) {
+            if (circuitBreaker.tryAcquire()) {
+                try {
+                    if (operation == Operation.START) {
+                        delegate.startAPIs(batch);
+                    } else {
+                        delegate.stopAPIs(batch);
+                    }
+                    circuitBreaker.onSuccess();
+                } catch (final BatchOperationException boe) {
+                    boolean transientFailure = false;
+                    for (final ApiEntity api : batch) {
+                        final RuntimeException failure = boe.getFailures().get(api.getId());
+                        if (failure instanceof ExternalAPIException && ((ExternalAPIException) failure).isRetryable()) {
+                            transientFailure = true;
+                            remaining.add(api);
+                        } else if (failure != null) {
+                            failures.put(api.getId(), failure);
+                        }
+                    }
+                    if (transientFailure) {
+                        circuitBreaker.onFailure();
+                    } else {
+                        circuitBreaker.onSuccess();
+                    }
+                } catch (final RuntimeException ex) {
+                    circuitBreaker.release();
+                    throw ex;
+                }
+            } else {
+                remaining.addAll(batch);
+            }
+        }
+        for (final ApiEntity api : remaining) {
+            try {
+                execute(operation, api);
+            } catch (final RuntimeException ex) {
+                failures.put(api.getId(), ex);
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new BatchOperationException(String.format("Unable to %s the APIs on %s",
+                    operation.name().toLowerCase(), delegate.name()), failures);
+        }
+    }
+
+    /**
+     * Replays the pending operations of the journal, stopping at the first one which can not be performed.
+     */
+    void replay() {
+        if (apiLoader == null || !replaying.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final List<FailureJournal.Entry> entries = journal.getPendingEntries();
+            if (entries.isEmpty()) {
+                return;
+            }
+            logger.info("Replaying {} failed operation(s) on {}", entries.size(), delegate.name());
+            int replayed = 0;
+            for (final FailureJournal.Entry entry : entries) {
+                final Lock lock = lockFor(entry.getApiId());
+                lock.lock();
+                try {
+                    if (!journal.isPending(entry)) {
+                        // superseded by a more recent operation
+                        continue;
+                    }
+                    final ApiEntity api;
+                    try {
+                        api = load(entry);
+                    } catch (final RuntimeException ex) {
+                        logger.warn("Unable to read the API id[{}] to replay, {} operation(s) still pending",
+                                entry.getApiId(), journal.size(), ex);
+                        return;
+                    }
+                    if (api == null) {
+                        logger.info("The API id[{}] is no longer deployed, its {} is not replayed", entry.getApiId(),
+                                entry.getOperation().name().toLowerCase());
+                        journal.acknowledge(entry.getApiId());
+                        continue;
+                    }
+                    try {
+                        if (!call(() -> invoke(entry.getOperation(), api), 1)) {
+                            logger.info("Replay on {} interrupted after {} operation(s), {} still pending",
+                                    delegate.name(), replayed, journal.size());
+                            return;
+                        }
+                        replayed++;
+                    } catch (final RuntimeException ex) {
+                        logger.error("Unable to replay the {} of the API id[{}] on {}, operation dropped",
+                                entry.getOperation().name().toLowerCase(), entry.getApiId(), delegate.name(), ex);
+                    }
+                    journal.acknowledge(entry.getApiId());
+                } finally {
+                    lock.unlock();
+                }
+            }
+            logger.info("{} failed operation(s) replayed on {}", replayed, delegate.name());
+        } catch (final Exception ex) {
+            logger.error("Error while replaying the failed operations on {}", delegate.name(), ex);
+        } finally {
+            journal.compact();
+            replaying.set(false);
+        }
+    }
+
+    private ApiEntity load(final FailureJournal.Entry entry) {
+        if (entry.getOperation() == Operation.START) {
+            return apiLoader.apply(entry.getApiId());
+        }
+        // only the id is needed to stop an API, which may have been deleted from Gravitee meanwhile
+        final ApiEntity api = new ApiEntity();
+        api.setId(entry.getApiId());
+        return api;
+    }
+
+    private void invoke(final Operation operation, final ApiEntity api) {
+        if (operation == Operation.START) {
+            delegate.startAPI(api);
+        } else {
+            delegate.stopAPI(api);
+        }
+    }
+
+    /**
+     * Calls the provider, retrying the transient failures with an exponential backoff.
+     *
+     * @return true if the call has succeeded, false if it has failed with a transient error or the circuit is open
+     * @throws RuntimeException if the call has failed with a non transient error
+     */
+    private boolean call(final Runnable call, final int maxAttempts) {
+        long backoff = options.getInitialBackoff();
+        for (int attempt = 1; ; attempt++) {
+            if (!circuitBreaker.tryAcquire()) {
+                logger.debug("Circuit breaker of {} is open, call rejected", delegate.name());
+                return false;
+            }
+            try {
+                call.run();
+                circuitBreaker.onSuccess();
+                return true;
+            } catch (final ExternalAPIException eae) {
+                if (!eae.isRetryable()) {
+                    // the provider is up but has refused the call
+                    circuitBreaker.onSuccess();
+                    throw eae;
+                }
+                circuitBreaker.onFailure();
+                if (attempt >= maxAttempts) {
+                    logger.debug("Call to {} failed after {} attempt(s)", delegate.name(), attempt, eae);
+                    return false;
+                }
+                logger.debug("Call to {} failed, attempt {} of {}: {}", delegate.name(), attempt, maxAttempts, eae.getMessage());
+            } catch (final RuntimeException ex) {
+                circuitBreaker.release();
+                throw ex;
+            }
+            try {
+                // half of the backoff is randomized so the retries of the different workers are spread
+                Thread.sleep(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            backoff = Math.min(options.getMaxBackoff(), (long) (backoff * options.getBackoffMultiplier()));
+        }
+    }
+
+    private boolean isPending(final String apiId) {
+        final Lock lock = lockFor(apiId);
+        lock.lock();
+        try {
+            return journal.isPending(apiId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Lock lockFor(final String apiId) {
+        return locks[stripeFor(apiId)];
+    }
+
+    private int stripeFor(final String apiId) {
+        return (apiId.hashCode() & Integer.MAX_VALUE) % locks.length;
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    public int getPendingCount() {
+        return journal.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        journal.close();
+        // the decorated service is not a bean, its lifecycle is handled here
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+}
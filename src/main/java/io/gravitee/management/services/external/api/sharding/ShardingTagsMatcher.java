@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.sharding;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Immutable matcher of the inclusion/exclusion sharding tags configured on the service.
+ *
+ * Tags are compared with the primary strength of the default locale {@link Collator}, so the configured tags are
+ * turned into {@link CollationKey}s once and each API tag is then looked up in a hash set.
+ *
+ * @author GraviteeSource Team
+ */
+public final class ShardingTagsMatcher {
+
+    private static final ThreadLocal<Collator> COLLATOR = ThreadLocal.withInitial(() -> {
+        final Collator collator = Collator.getInstance();
+        collator.setStrength(Collator.PRIMARY);
+        return collator;
+    });
+
+    private final String expression;
+    private final Set<CollationKey> inclusionTags;
+    private final Set<CollationKey> exclusionTags;
+
+    private ShardingTagsMatcher(final String expression, final Set<CollationKey> inclusionTags,
+                                final Set<CollationKey> exclusionTags) {
+        this.expression = expression;
+        this.inclusionTags = inclusionTags;
+        this.exclusionTags = exclusionTags;
+    }
+
+    /**
+     * Compiles a comma separated list of tags, excluded tags being prefixed with '!'.
+     *
+     * @throws IllegalArgumentException if a tag is both included and excluded
+     */
+    public static ShardingTagsMatcher compile(final String expression) {
+        final Set<CollationKey> inclusionTags = new HashSet<>();
+        final Set<CollationKey> exclusionTags = new HashSet<>();
+        if (expression != null) {
+            final Collator collator = COLLATOR.get();
+            for (final String token : expression.split(",")) {
+                final String tag = token.trim();
+                if (tag.startsWith("!")) {
+                    exclusionTags.add(collator.getCollationKey(tag.substring(1)));
+                } else if (!tag.isEmpty()) {
+                    inclusionTags.add(collator.getCollationKey(tag));
+                }
+            }
+        }
+        for (final CollationKey inclusionTag : inclusionTags) {
+            if (exclusionTags.contains(inclusionTag)) {
+                throw new IllegalArgumentException("You must not configure a tag to be included and excluded");
+            }
+        }
+        return new ShardingTagsMatcher(expression,
+                Collections.unmodifiableSet(inclusionTags), Collections.unmodifiableSet(exclusionTags));
+    }
+
+    /**
+     * @return true if the API has one of the included tags or none of the excluded ones, always true if no tag is
+     * configured
+     */
+    public boolean matches(final Set<String> tags) {
+        if (inclusionTags.isEmpty() && exclusionTags.isEmpty()) {
+            // no tags configured on this instance
+            return true;
+        }
+        if (tags == null) {
+            return false;
+        }
+        final Collator collator = COLLATOR.get();
+        boolean excluded = false;
+        for (final String tag : tags) {
+            final CollationKey key = collator.getCollationKey(tag);
+            if (inclusionTags.contains(key)) {
+                return true;
+            }
+            excluded |= exclusionTags.contains(key);
+        }
+        return !exclusionTags.isEmpty() && !excluded;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+}
@@ -16,11 +16,22 @@
 package io.gravitee.management.services.external.api.spring;
 
 import io.gravitee.management.services.external.api.APIService;
+import io.gravitee.management.services.external.api.cache.ExpiringCache;
+import io.gravitee.management.services.external.api.http.HttpTransportOptions;
 import io.gravitee.management.services.external.api.mulesoft.MuleSoftAPIService;
+import io.gravitee.management.services.external.api.resilience.FailureJournal;
+import io.gravitee.management.services.external.api.resilience.ResilienceOptions;
+import io.gravitee.management.services.external.api.resilience.ResilientAPIService;
+import io.gravitee.management.services.external.api.state.SyncStateStore;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author Azize ELAMRANI (azize.elamrani at graviteesource.com)
  * @author GraviteeSource Team
@@ -30,12 +41,113 @@ public class ExternalAPIConfiguration {
 
     @Value("${services.external-api.type:#{null}}")
     private String type;
+    @Value("${services.external-api.state.file:#{null}}")
+    private String stateFile;
+    @Value("${services.external-api.state.flush-interval:1000}")
+    private long stateFlushInterval;
+    @Value("${services.external-api.cache.max-size:1000}")
+    private int cacheMaxSize;
+    @Value("${services.external-api.cache.ttl:3600000}")
+    private long cacheTtl;
+    @Value("${services.external-api.http.max-connections:20}")
+    private int httpMaxConnections;
+    @Value("${services.external-api.http.max-connections-per-route:10}")
+    private int httpMaxConnectionsPerRoute;
+    @Value("${services.external-api.http.connect-timeout:5000}")
+    private int httpConnectTimeout;
+    @Value("${services.external-api.http.socket-timeout:10000}")
+    private int httpSocketTimeout;
+    @Value("${services.external-api.http.connection-request-timeout:5000}")
+    private int httpConnectionRequestTimeout;
+    @Value("${services.external-api.http.keep-alive:30000}")
+    private long httpKeepAlive;
+    @Value("${services.external-api.http.time-to-live:-1}")
+    private long httpTimeToLive;
+    @Value("${services.external-api.resilience.enabled:true}")
+    private boolean resilienceEnabled;
+    @Value("${services.external-api.resilience.journal:#{null}}")
+    private String resilienceJournal;
+    @Value("${services.external-api.resilience.max-attempts:3}")
+    private int resilienceMaxAttempts;
+    @Value("${services.external-api.resilience.initial-backoff:500}")
+    private long resilienceInitialBackoff;
+    @Value("${services.external-api.resilience.backoff-multiplier:2}")
+    private double resilienceBackoffMultiplier;
+    @Value("${services.external-api.resilience.max-backoff:10000}")
+    private long resilienceMaxBackoff;
+    @Value("${services.external-api.resilience.failure-threshold:5}")
+    private int resilienceFailureThreshold;
+    @Value("${services.external-api.resilience.open-duration:30000}")
+    private long resilienceOpenDuration;
+    @Value("${services.external-api.resilience.replay-interval:30000}")
+    private long resilienceReplayInterval;
+
+    @Autowired
+    private AutowireCapableBeanFactory beanFactory;
 
     @Bean
     public APIService apiService() {
         if ("mulesoft".equals(type)) {
-            return new MuleSoftAPIService();
+            final MuleSoftAPIService muleSoftAPIService = new MuleSoftAPIService();
+            if (!resilienceEnabled) {
+                return muleSoftAPIService;
+            }
+            // the decorated service is not a bean by itself
+            beanFactory.autowireBean(muleSoftAPIService);
+            // started by the external API service, which knows the APIs deployed on this instance
+            return new ResilientAPIService(muleSoftAPIService, resilienceOptions(), failureJournal());
         }
         return null;
     }
+
+    private ResilienceOptions resilienceOptions() {
+        final ResilienceOptions options = new ResilienceOptions();
+        options.setMaxAttempts(resilienceMaxAttempts);
+        options.setInitialBackoff(resilienceInitialBackoff);
+        options.setBackoffMultiplier(resilienceBackoffMultiplier);
+        options.setMaxBackoff(resilienceMaxBackoff);
+        options.setFailureThreshold(resilienceFailureThreshold);
+        options.setOpenDuration(resilienceOpenDuration);
+        options.setReplayInterval(resilienceReplayInterval);
+        return options;
+    }
+
+    private FailureJournal failureJournal() {
+        if (resilienceJournal == null || resilienceJournal.isEmpty()) {
+            return new FailureJournal();
+        }
+        return new FailureJournal(Paths.get(resilienceJournal));
+    }
+
+    @Bean
+    public SyncStateStore syncStateStore() {
+        if (stateFile == null || stateFile.isEmpty()) {
+            return new SyncStateStore();
+        }
+        return new SyncStateStore(Paths.get(stateFile), stateFlushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cache of the ids of the APIs on the external API provider, by Gravitee API id.
+     */
+    @Bean
+    public ExpiringCache<String, String> externalIdCache() {
+        return new ExpiringCache<>("External API id", cacheMaxSize, cacheTtl, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Settings of the HTTP client, which is only created by the provider service on its first call.
+     */
+    @Bean
+    public HttpTransportOptions httpTransportOptions() {
+        final HttpTransportOptions options = new HttpTransportOptions();
+        options.setMaxConnections(httpMaxConnections);
+        options.setMaxConnectionsPerRoute(httpMaxConnectionsPerRoute);
+        options.setConnectTimeout(httpConnectTimeout);
+        options.setSocketTimeout(httpSocketTimeout);
+        options.setConnectionRequestTimeout(httpConnectionRequestTimeout);
+        options.setKeepAlive(httpKeepAlive);
+        options.setTimeToLive(httpTimeToLive);
+        return options;
+    }
 }
@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.state;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps track of the last representation successfully pushed to the external API provider for each API, so an
+ * unchanged API does not have to be pushed again.
+ *
+ * The states are kept in memory and, if a file is provided, reloaded on startup. The changes are written to the file
+ * periodically and on close rather than on each change, so a burst of synchronizations results in a single write.
+ * The changes of the last interval may be lost on a crash: the APIs concerned are then looked up again on the
+ * provider on their next synchronization.
+ *
+ * @author GraviteeSource Team
+ */
+public class SyncStateStore implements Closeable {
+
+    private final Logger logger = LoggerFactory.getLogger(SyncStateStore.class);
+
+    private static final char SEPARATOR = ',';
+
+    private final ConcurrentMap<String, SyncState> states = new ConcurrentHashMap<>();
+    private final Path file;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean closed;
+
+    public SyncStateStore() {
+        this(null);
+    }
+
+    public SyncStateStore(final Path file) {
+        this(file, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param flushInterval the interval between two writes of the changed states to the file
+     */
+    public SyncStateStore(final Path file, final long flushInterval, final TimeUnit unit) {
+        this.file = file;
+        if (file == null) {
+            scheduler = null;
+            return;
+        }
+        if (Files.exists(file)) {
+            load();
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "external-api-state-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, unit);
+    }
+
+    public SyncState get(final String apiId) {
+        return states.get(apiId);
+    }
+
+    public void put(final String apiId, final String hash, final String externalId) {
+        final SyncState state = new SyncState(hash, externalId);
+        if (!state.equals(states.put(apiId, state))) {
+            changed();
+        }
+    }
+
+    public void remove(final String apiId) {
+        if (states.remove(apiId) != null) {
+            changed();
+        }
+    }
+
+    public Set<String> getApiIds() {
+        return Collections.unmodifiableSet(states.keySet());
+    }
+
+    private void load() {
+        final Properties properties = new Properties();
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            properties.load(inputStream);
+        } catch (final IOException ioe) {
+            logger.error("Unable to load the external API sync states from {}, starting with an empty state", file, ioe);
+            return;
+        }
+        for (final String apiId : properties.stringPropertyNames()) {
+            final String value = properties.getProperty(apiId);
+            final int separatorIndex = value.indexOf(SEPARATOR);
+            if (separatorIndex < 0) {
+                states.put(apiId, new SyncState(value, null));
+            } else {
+                final String externalId = value.substring(separatorIndex + 1);
+                states.put(apiId, new SyncState(value.substring(0, separatorIndex), externalId.isEmpty() ? null : externalId));
+            }
+        }
+        logger.info("{} external API sync state(s) loaded from {}", states.size(), file);
+    }
+
+    private void changed() {
+        dirty.set(true);
+        if (closed) {
+            // no more periodic writes, e.g. an operation completing during the shutdown
+            flush();
+        }
+    }
+
+    /**
+     * Writes the states to the file if they have changed since the last write.
+     */
+    public synchronized void flush() {
+        if (file == null || !dirty.getAndSet(false)) {
+            return;
+        }
+        final Properties properties = new Properties();
+        states.forEach((apiId, state) -> properties.setProperty(apiId,
+                state.getHash() + SEPARATOR + (state.getExternalId() == null ? "" : state.getExternalId())));
+        try {
+            final Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            final Path tmpFile = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (OutputStream outputStream = Files.newOutputStream(tmpFile)) {
+                properties.store(outputStream, "External API sync states");
+            }
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException ioe) {
+            dirty.set(true);
+            logger.error("Unable to write the external API sync states to {}", file, ioe);
+        }
+    }
+
+    /**
+     * Stops the periodic writes and writes the last changes.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        flush();
+    }
+
+    public static final class SyncState {
+        private final String hash;
+        private final String externalId;
+
+        private SyncState(final String hash, final String externalId) {
+            this.hash = hash;
+            this.externalId = externalId;
+        }
+
+        /**
+         * @return the hash of the last representation pushed to the external API provider
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * @return the id of the API on the external API provider, if known
+         */
+        public String getExternalId() {
+            return externalId;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final SyncState syncState = (SyncState) o;
+            return Objects.equals(hash, syncState.hash) && Objects.equals(externalId, syncState.externalId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(hash, externalId);
+        }
+    }
+}
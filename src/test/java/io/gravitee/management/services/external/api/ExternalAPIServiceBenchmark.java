@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api;
+
+import io.gravitee.common.event.Event;
+import io.gravitee.common.event.EventManager;
+import io.gravitee.management.services.external.api.mulesoft.MockMuleSoftServer;
+import io.gravitee.management.services.external.api.mulesoft.MuleSoftAPIService;
+import io.gravitee.management.services.external.api.state.SyncStateStore;
+import io.gravitee.rest.api.model.api.ApiEntity;
+import io.gravitee.rest.api.service.event.ApiEvent;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the processing of the API events by the {@link ExternalAPIService}, from their reception to their
+ * synchronization with an embedded MuleSoft stand-in.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ExternalAPIServiceBenchmark
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExternalAPIServiceBenchmark {
+
+    private static final int EVENTS = 100;
+
+    @Param({"0", "20"})
+    public long latency;
+
+    @Param({"1", "4"})
+    public int workers;
+
+    private MockMuleSoftServer server;
+    private MuleSoftAPIService muleSoftAPIService;
+    private ExternalAPIService externalAPIService;
+    private CompletionAPIService apiService;
+    private List<ApiEntity> apis;
+    private long revision;
+
+    @Setup
+    public void setup() throws Exception {
+        server = new MockMuleSoftServer(latency);
+        server.start();
+        muleSoftAPIService = server.createAPIService();
+        apiService = new CompletionAPIService(muleSoftAPIService);
+
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("services.external-api.dispatcher.workers", workers);
+        properties.put("services.external-api.dispatcher.coalescing-window", 0);
+        properties.put("services.external-api.tags-refresh-interval", 0);
+        properties.put("services.external-api.reconciliation.enabled", false);
+        final StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+
+        externalAPIService = new ExternalAPIService();
+        set("eventManager", Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{EventManager.class},
+                (proxy, method, args) -> null));
+        set("environment", environment);
+        set("apiService", apiService);
+        set("syncStateStore", new SyncStateStore());
+        externalAPIService.start();
+
+        apis = new ArrayList<>(EVENTS);
+        for (int i = 0; i < EVENTS; i++) {
+            apis.add(MockMuleSoftServer.newApi("api-" + i));
+        }
+        // the APIs exist on MuleSoft, so each event leads to an update
+        apiService.startAPIs(apis);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        externalAPIService.stop();
+        muleSoftAPIService.close();
+        server.stop();
+    }
+
+    /**
+     * Events per second for bursts of events of different APIs.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(EVENTS)
+    public void burst() throws InterruptedException {
+        final CountDownLatch completion = apiService.expect(EVENTS);
+        for (final ApiEntity api : apis) {
+            externalAPIService.onEvent(new ApiUpdateEvent(modify(api)));
+        }
+        completion.await();
+    }
+
+    /**
+     * Latency distribution (including p99) of an event, from its reception to its synchronization.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void single() throws InterruptedException {
+        final CountDownLatch completion = apiService.expect(1);
+        externalAPIService.onEvent(new ApiUpdateEvent(modify(apis.get(0))));
+        completion.await();
+    }
+
+    /**
+     * Changes the API so it is not skipped as unchanged since its last synchronization.
+     */
+    private ApiEntity modify(final ApiEntity api) {
+        api.setDescription("Description of the API " + api.getId() + ", revision " + ++revision);
+        return api;
+    }
+
+    private void set(final String fieldName, final Object value) throws ReflectiveOperationException {
+        final Field field = ExternalAPIService.class.getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(externalAPIService, value);
+    }
+
+    private static final class ApiUpdateEvent implements Event<ApiEvent, ApiEntity> {
+        private final ApiEntity api;
+
+        private ApiUpdateEvent(final ApiEntity api) {
+            this.api = api;
+        }
+
+        @Override
+        public ApiEntity content() {
+            return api;
+        }
+
+        @Override
+        public ApiEvent type() {
+            return ApiEvent.UPDATE;
+        }
+    }
+
+    /**
+     * Signals the completion of the operations to the benchmark thread.
+     */
+    private static final class CompletionAPIService implements APIService {
+        private final APIService delegate;
+        private volatile CountDownLatch completion = new CountDownLatch(0);
+
+        private CompletionAPIService(final APIService delegate) {
+            this.delegate = delegate;
+        }
+
+        private CountDownLatch expect(final int operations) {
+            completion = new CountDownLatch(operations);
+            return completion;
+        }
+
+        @Override
+        public String name() {
+            return delegate.name();
+        }
+
+        @Override
+        public void startAPI(final ApiEntity api) {
+            try {
+                delegate.startAPI(api);
+            } finally {
+                completion.countDown();
+            }
+        }
+
+        @Override
+        public void stopAPI(final ApiEntity api) {
+            try {
+                delegate.stopAPI(api);
+            } finally {
+                completion.countDown();
+            }
+        }
+    }
+}
@@ -15,12 +15,268 @@
  */
 package io.gravitee.management.services.external.api;
 
+import io.gravitee.common.component.Lifecycle;
+import io.gravitee.common.event.Event;
+import io.gravitee.common.event.EventManager;
+import io.gravitee.management.services.external.api.mulesoft.MockMuleSoftServer;
+import io.gravitee.management.services.external.api.resilience.FailureJournal;
+import io.gravitee.management.services.external.api.resilience.ResilienceOptions;
+import io.gravitee.management.services.external.api.resilience.ResilientAPIService;
+import io.gravitee.rest.api.model.api.ApiEntity;
+import io.gravitee.rest.api.service.ApiService;
+import io.gravitee.rest.api.service.event.ApiEvent;
+import io.gravitee.rest.api.service.exceptions.ApiNotFoundException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
 /**
  * @author Azize ELAMRANI (azize.elamrani at graviteesource.com)
  * @author GraviteeSource Team
  */
 public class ExternalAPIServiceTest {
 
+    private final Map<String, Object> properties = new ConcurrentHashMap<>();
+    private final Map<String, ApiEntity> graviteeApis = new ConcurrentHashMap<>();
+    private final RecordingAPIService apiService = new RecordingAPIService();
     private ExternalAPIService externalAPIService;
 
+    @Before
+    public void setUp() throws ReflectiveOperationException {
+        properties.put("services.external-api.dispatcher.coalescing-window", "0");
+        properties.put("services.external-api.reconciliation.enabled", "false");
+        final StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("test", properties));
+
+        externalAPIService = new ExternalAPIService();
+        set("environment", environment);
+        set("apiService", apiService);
+        set("eventManager", Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{EventManager.class},
+                (proxy, method, args) -> null));
+        set("graviteeApiService", Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{ApiService.class},
+                (proxy, method, args) -> {
+                    if ("findById".equals(method.getName())) {
+                        final ApiEntity api = graviteeApis.get((String) args[0]);
+                        if (api == null) {
+                            throw new ApiNotFoundException((String) args[0]);
+                        }
+                        return api;
+                    }
+                    return new HashSet<>(graviteeApis.values());
+                }));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        externalAPIService.stop();
+    }
+
+    @Test
+    public void shouldStartADeployedApi() throws Exception {
+        externalAPIService.start();
+
+        externalAPIService.onEvent(event(ApiEvent.DEPLOY, api("api")));
+
+        await(() -> apiService.getCalls().size() == 1);
+        assertEquals(asList("start api"), apiService.getCalls());
+    }
+
+    @Test
+    public void shouldStopAnUndeployedApi() throws Exception {
+        externalAPIService.start();
+
+        externalAPIService.onEvent(event(ApiEvent.UNDEPLOY, api("api")));
+
+        await(() -> apiService.getCalls().size() == 1);
+        assertEquals(asList("stop api"), apiService.getCalls());
+    }
+
+    @Test
+    public void shouldStartAnUpdatedApiWithoutStoppingIt() throws Exception {
+        externalAPIService.start();
+
+        externalAPIService.onEvent(event(ApiEvent.UPDATE, api("api")));
+
+        await(() -> apiService.getCalls().size() == 1);
+        assertEquals(asList("start api"), apiService.getCalls());
+    }
+
+    @Test
+    public void shouldRouteTheEventsAccordingToTheShardingTags() throws Exception {
+        properties.put("services.external-api.tags", "public");
+        externalAPIService.start();
+
+        externalAPIService.onEvent(event(ApiEvent.DEPLOY, api("private-api", "private")));
+        externalAPIService.onEvent(event(ApiEvent.UPDATE, api("private-api", "private")));
+        externalAPIService.onEvent(event(ApiEvent.DEPLOY, api("public-api", "public")));
+
+        await(() -> apiService.getCalls().size() == 2);
+        // the APIs are handled in parallel
+        assertEquals(new HashSet<>(asList("stop private-api", "start public-api")), new HashSet<>(apiService.getCalls()));
+    }
+
+    @Test
+    public void shouldHandleTheEventsOfAnApiInOrder() throws Exception {
+        externalAPIService.start();
+
+        for (int i = 0; i < 20; i++) {
+            externalAPIService.onEvent(event(i % 2 == 0 ? ApiEvent.DEPLOY : ApiEvent.UNDEPLOY, api("api")));
+        }
+
+        await(() -> apiService.getCalls().size() == 20);
+        for (int i = 0; i < 20; i++) {
+            assertEquals((i % 2 == 0 ? "start" : "stop") + " api", apiService.getCalls().get(i));
+        }
+    }
+
+    @Test
+    public void shouldCoalesceTheEventsOfAnApi() throws Exception {
+        properties.put("services.external-api.dispatcher.coalescing-window", "100");
+        externalAPIService.start();
+
+        externalAPIService.onEvent(event(ApiEvent.DEPLOY, api("api")));
+        externalAPIService.onEvent(event(ApiEvent.UPDATE, api("api")));
+        externalAPIService.onEvent(event(ApiEvent.UPDATE, api("api")));
+        externalAPIService.onEvent(event(ApiEvent.DEPLOY, api("other-api")));
+        externalAPIService.onEvent(event(ApiEvent.UNDEPLOY, api("other-api")));
+
+        await(() -> apiService.getCalls().size() == 1);
+        Thread.sleep(200);
+        assertEquals(asList("start api"), apiService.getCalls());
+    }
+
+    @Test
+    public void shouldReconcileTheDeployedApisOnStartup() throws Exception {
+        properties.put("services.external-api.reconciliation.enabled", "true");
+        properties.put("services.external-api.tags", "public");
+        graviteeApis.put("public-api", api("public-api", "public"));
+        graviteeApis.put("private-api", api("private-api", "private"));
+
+        externalAPIService.start();
+
+        await(() -> apiService.getCalls().size() == 1);
+        assertEquals(asList("start public-api"), apiService.getCalls());
+    }
+
+    @Test
+    public void shouldKeepTheShardingTagsWhenTheReloadedOnesAreInvalid() throws Exception {
+        properties.put("services.external-api.tags", "public");
+        properties.put("services.external-api.tags-refresh-interval", "10");
+        externalAPIService.start();
+
+        properties.put("services.external-api.tags", "public,!public");
+        Thread.sleep(50);
+        externalAPIService.onEvent(event(ApiEvent.DEPLOY, api("public-api", "public")));
+        await(() -> apiService.getCalls().size() == 1);
+
+        properties.put("services.external-api.tags", "private");
+        Thread.sleep(50);
+        externalAPIService.onEvent(event(ApiEvent.DEPLOY, api("private-api", "private")));
+
+        await(() -> apiService.getCalls().size() == 2);
+        assertEquals(asList("start public-api", "start private-api"), apiService.getCalls());
+    }
+
+    @Test
+    public void shouldOnlyReplayTheStartOfTheApisStillDeployed() throws Exception {
+        properties.put("services.external-api.tags", "public");
+        final ApiEntity stoppedApi = api("stopped-api", "public");
+        stoppedApi.setState(Lifecycle.State.STOPPED);
+        graviteeApis.put("stopped-api", stoppedApi);
+        graviteeApis.put("private-api", api("private-api", "private"));
+        graviteeApis.put("public-api", api("public-api", "public"));
+        final FailureJournal journal = new FailureJournal();
+        journal.append(FailureJournal.Operation.START, "stopped-api");
+        journal.append(FailureJournal.Operation.START, "private-api");
+        journal.append(FailureJournal.Operation.START, "deleted-api");
+        journal.append(FailureJournal.Operation.START, "public-api");
+        final ResilienceOptions options = new ResilienceOptions();
+        options.setReplayInterval(0);
+        final ResilientAPIService resilientAPIService = new ResilientAPIService(apiService, options, journal);
+        set("apiService", resilientAPIService);
+
+        try {
+            externalAPIService.start();
+
+            await(() -> resilientAPIService.getPendingCount() == 0);
+            assertEquals(asList("start public-api"), apiService.getCalls());
+        } finally {
+            resilientAPIService.close();
+        }
+    }
+
+    private void set(final String fieldName, final Object value) throws ReflectiveOperationException {
+        final Field field = ExternalAPIService.class.getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(externalAPIService, value);
+    }
+
+    private static ApiEntity api(final String id, final String... tags) {
+        final ApiEntity api = MockMuleSoftServer.newApi(id);
+        api.setState(Lifecycle.State.STARTED);
+        api.setTags(new HashSet<>(asList(tags)));
+        return api;
+    }
+
+    private static Event<ApiEvent, ApiEntity> event(final ApiEvent type, final ApiEntity api) {
+        return new Event<ApiEvent, ApiEntity>() {
+            @Override
+            public ApiEntity content() {
+                return api;
+            }
+
+            @Override
+            public ApiEvent type() {
+                return type;
+            }
+        };
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Records the calls it receives, in order.
+     */
+    private static class RecordingAPIService implements APIService {
+
+        private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public String name() {
+            return "Recording";
+        }
+
+        @Override
+        public void startAPI(final ApiEntity api) {
+            calls.add("start " + api.getId());
+        }
+
+        @Override
+        public void stopAPI(final ApiEntity api) {
+            calls.add("stop " + api.getId());
+        }
+
+        List<String> getCalls() {
+            synchronized (calls) {
+                return new ArrayList<>(calls);
+            }
+        }
+    }
 }
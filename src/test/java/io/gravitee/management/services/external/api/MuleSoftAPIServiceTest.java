@@ -15,7 +15,18 @@
  */
 package io.gravitee.management.services.external.api;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import io.gravitee.management.services.external.api.mulesoft.MockMuleSoftServer;
 import io.gravitee.management.services.external.api.mulesoft.MuleSoftAPIService;
+import io.gravitee.rest.api.model.api.ApiEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
 
 /**
  * @author Azize ELAMRANI (azize.elamrani at graviteesource.com)
@@ -23,6 +34,145 @@ import io.gravitee.management.services.external.api.mulesoft.MuleSoftAPIService;
  */
 public class MuleSoftAPIServiceTest {
 
-    private MuleSoftAPIService muleSoftAPIService = new MuleSoftAPIService();
+    private MockMuleSoftServer server;
+    private MuleSoftAPIService muleSoftAPIService;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockMuleSoftServer(0);
+        server.start();
+        muleSoftAPIService = server.createAPIService();
+    }
+
+    @After
+    public void tearDown() {
+        muleSoftAPIService.close();
+        server.stop();
+    }
+
+    @Test
+    public void shouldLoginOnceForAllTheRequests() {
+        for (int i = 0; i < 5; i++) {
+            muleSoftAPIService.startAPI(MockMuleSoftServer.newApi("api-" + i));
+        }
+
+        assertEquals(1, server.getLoginCount());
+    }
+
+    @Test
+    public void shouldCreateTheApi() {
+        muleSoftAPIService.startAPI(MockMuleSoftServer.newApi("api"));
+
+        assertNotNull(server.getMuleSoftApiId("api"));
+    }
+
+    @Test
+    public void shouldNotCallMuleSoftForAnUnchangedApi() {
+        muleSoftAPIService.startAPI(MockMuleSoftServer.newApi("api"));
+        final long requests = server.getRequestCount();
+
+        muleSoftAPIService.startAPI(MockMuleSoftServer.newApi("api"));
+
+        assertEquals(requests, server.getRequestCount());
+    }
+
+    @Test
+    public void shouldUpdateTheDescriptionAndTheEndpointOfTheApi() {
+        muleSoftAPIService.startAPI(MockMuleSoftServer.newApi("api"));
+
+        final ApiEntity api = MockMuleSoftServer.newApi("api", "https://new-backend.gravitee.io");
+        api.setDescription("New description");
+        muleSoftAPIService.startAPI(api);
+
+        final JsonNode update = server.getLastUpdate(server.getMuleSoftApiId("api"));
+        assertNotNull(update);
+        assertEquals("New description", update.path("instanceLabel").asText());
+        assertEquals("https://new-backend.gravitee.io", update.path("endpoint").path("proxyUri").asText());
+    }
+
+    @Test
+    public void shouldDeleteTheApi() {
+        final ApiEntity api = MockMuleSoftServer.newApi("api");
+        muleSoftAPIService.startAPI(api);
+
+        muleSoftAPIService.stopAPI(api);
+
+        assertNull(server.getMuleSoftApiId("api"));
+    }
+
+    @Test
+    public void shouldUpdateAnApiUnknownLocallyWithALookupAndAPatch() throws ReflectiveOperationException {
+        muleSoftAPIService.startAPI(MockMuleSoftServer.newApi("api"));
+        final ApiEntity api = MockMuleSoftServer.newApi("api");
+        api.setDescription("New description");
+        // a service without the state and the cache of the first one, as after a restart without state file
+        final MuleSoftAPIService restartedAPIService = server.createAPIService();
+        try {
+            final long requests = server.getRequestCount();
+
+            restartedAPIService.startAPI(api);
+
+            // the login, the lookup of the MuleSoft API id and the update
+            assertEquals(requests + 3, server.getRequestCount());
+            assertEquals("New description",
+                    server.getLastUpdate(server.getMuleSoftApiId("api")).path("instanceLabel").asText());
+        } finally {
+            restartedAPIService.close();
+        }
+    }
+
+    @Test
+    public void shouldRecreateAnApiDeletedFromMuleSoft() {
+        muleSoftAPIService.startAPI(MockMuleSoftServer.newApi("api"));
+        final String muleSoftApiId = server.getMuleSoftApiId("api");
+        server.delete("api");
+
+        final ApiEntity api = MockMuleSoftServer.newApi("api");
+        api.setDescription("New description");
+        muleSoftAPIService.startAPI(api);
+
+        assertNotNull(server.getMuleSoftApiId("api"));
+        assertNotEquals(muleSoftApiId, server.getMuleSoftApiId("api"));
+    }
+
+    @Test
+    public void shouldDeleteTheApiWithASingleCall() {
+        final ApiEntity api = MockMuleSoftServer.newApi("api");
+        muleSoftAPIService.startAPI(api);
+        final long requests = server.getRequestCount();
+
+        muleSoftAPIService.stopAPI(api);
+
+        // the id of the MuleSoft API is known from the creation
+        assertEquals(requests + 1, server.getRequestCount());
+        assertNull(server.getMuleSoftApiId("api"));
+    }
+
+    @Test
+    public void shouldStartTheApisOfABatchOnTheSameWorkers() throws InterruptedException {
+        for (int batch = 0; batch < 3; batch++) {
+            final List<ApiEntity> apis = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                apis.add(MockMuleSoftServer.newApi("api-" + batch + '-' + i));
+            }
+            muleSoftAPIService.startAPIs(apis);
+        }
+
+        assertNotNull(server.getMuleSoftApiId("api-2-9"));
+        final long workers = countBatchWorkers();
+        assertTrue(workers > 0 && workers <= 4);
+
+        muleSoftAPIService.close();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (countBatchWorkers() > 0) {
+            assertTrue("The batch workers should stop with the service", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
 
+    private static long countBatchWorkers() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.isAlive() && thread.getName().startsWith("mulesoft-batch-"))
+                .count();
+    }
 }
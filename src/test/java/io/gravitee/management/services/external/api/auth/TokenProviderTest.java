@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.auth;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class TokenProviderTest {
+
+    private final AtomicInteger logins = new AtomicInteger();
+
+    @Test
+    public void shouldLoginOnceForConcurrentCallers() throws Exception {
+        final TokenProvider tokenProvider = new TokenProvider("test", () -> {
+            sleep(50);
+            return new TokenProvider.Token("token-" + logins.incrementAndGet(), 1, TimeUnit.HOURS);
+        });
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> callers = new ArrayList<>();
+        final AtomicInteger authorized = new AtomicInteger();
+        for (int i = 0; i < 8; i++) {
+            final Thread caller = new Thread(() -> {
+                try {
+                    start.await();
+                    if ("token-1".equals(tokenProvider.getAuthorization())) {
+                        authorized.incrementAndGet();
+                    }
+                } catch (final Exception ex) {
+                    // counted as not authorized
+                }
+            });
+            caller.start();
+            callers.add(caller);
+        }
+        start.countDown();
+        for (final Thread caller : callers) {
+            caller.join();
+        }
+        tokenProvider.close();
+
+        assertEquals(1, logins.get());
+        assertEquals(8, authorized.get());
+    }
+
+    @Test
+    public void shouldRenewARejectedAuthorizationOnlyOnce() throws IOException {
+        final TokenProvider tokenProvider = new TokenProvider("test",
+                () -> new TokenProvider.Token("token-" + logins.incrementAndGet(), 1, TimeUnit.HOURS));
+        final String rejected = tokenProvider.getAuthorization();
+
+        assertEquals("token-2", tokenProvider.renew(rejected));
+        // renewed in the meantime by another caller
+        assertEquals("token-2", tokenProvider.renew(rejected));
+        assertEquals("token-2", tokenProvider.getAuthorization());
+        assertEquals(2, logins.get());
+        tokenProvider.close();
+    }
+
+    @Test
+    public void shouldRefreshTheTokenInBackgroundUntilClosed() throws Exception {
+        final TokenProvider tokenProvider = new TokenProvider("test",
+                () -> new TokenProvider.Token("token-" + logins.incrementAndGet(), 100, TimeUnit.MILLISECONDS));
+        tokenProvider.getAuthorization();
+        Thread.sleep(150);
+        assertTrue(logins.get() >= 2);
+
+        tokenProvider.close();
+        final int loginsOnClose = logins.get();
+        Thread.sleep(300);
+        assertEquals(loginsOnClose, logins.get());
+    }
+
+    @Test
+    public void shouldNotRetryAFailedLoginBeforeTheBackoff() {
+        final TokenProvider tokenProvider = new TokenProvider("test", () -> {
+            logins.incrementAndGet();
+            throw new IOException("unauthorized");
+        });
+        for (int i = 0; i < 3; i++) {
+            try {
+                tokenProvider.getAuthorization();
+                fail("the login should fail");
+            } catch (final IOException ioe) {
+                // expected
+            }
+        }
+        assertEquals(1, logins.get());
+        tokenProvider.close();
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
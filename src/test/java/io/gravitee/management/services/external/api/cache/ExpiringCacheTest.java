@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.cache;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class ExpiringCacheTest {
+
+    @Test
+    public void shouldCountHitsAndMisses() {
+        final ExpiringCache<String, String> cache = new ExpiringCache<>("test", 10, 1, TimeUnit.HOURS);
+        cache.put("api", "id");
+
+        assertEquals("id", cache.get("api"));
+        assertNull(cache.get("other"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void shouldEvictTheLeastRecentlyUsedEntry() {
+        final ExpiringCache<String, String> cache = new ExpiringCache<>("test", 2, 1, TimeUnit.HOURS);
+        cache.put("api-1", "id-1");
+        cache.put("api-2", "id-2");
+        cache.get("api-1");
+        cache.put("api-3", "id-3");
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("api-2"));
+        assertEquals("id-1", cache.get("api-1"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void shouldExpireTheEntries() throws InterruptedException {
+        final ExpiringCache<String, String> cache = new ExpiringCache<>("test", 10, 20, TimeUnit.MILLISECONDS);
+        cache.put("api", "id");
+        Thread.sleep(50);
+
+        assertNull(cache.get("api"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void shouldClearTheEntriesOnClose() {
+        final ExpiringCache<String, String> cache = new ExpiringCache<>("test", 10, 1, TimeUnit.HOURS);
+        cache.put("api", "id");
+        cache.close();
+
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.dispatcher;
+
+import io.gravitee.rest.api.model.api.ApiEntity;
+import io.gravitee.rest.api.service.event.ApiEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class ApiEventCoalescerTest {
+
+    private ScheduledExecutorService scheduler;
+    private List<Emitted> emitted;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        emitted = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void shouldEmitDeployForDeployThenUpdates() {
+        final ApiEventCoalescer coalescer = coalescer(60000);
+        final ApiEntity lastState = api("api");
+        coalescer.submit(ApiEvent.DEPLOY, api("api"));
+        coalescer.submit(ApiEvent.UPDATE, api("api"));
+        coalescer.submit(ApiEvent.UPDATE, lastState);
+        coalescer.close();
+
+        assertEquals(1, emitted.size());
+        assertEquals(ApiEvent.DEPLOY, emitted.get(0).type);
+        assertSame(lastState, emitted.get(0).api);
+        assertEquals(2, coalescer.getSavedCount());
+    }
+
+    @Test
+    public void shouldEmitNothingForDeployThenUndeploy() {
+        final ApiEventCoalescer coalescer = coalescer(60000);
+        coalescer.submit(ApiEvent.DEPLOY, api("api"));
+        coalescer.submit(ApiEvent.UNDEPLOY, api("api"));
+        coalescer.close();
+
+        assertTrue(emitted.isEmpty());
+        assertEquals(1, coalescer.getCancelledCount());
+    }
+
+    @Test
+    public void shouldEmitUpdateForUndeployThenDeploy() {
+        final ApiEventCoalescer coalescer = coalescer(60000);
+        coalescer.submit(ApiEvent.UNDEPLOY, api("api"));
+        coalescer.submit(ApiEvent.DEPLOY, api("api"));
+        coalescer.close();
+
+        assertEquals(1, emitted.size());
+        assertEquals(ApiEvent.UPDATE, emitted.get(0).type);
+    }
+
+    @Test
+    public void shouldEmitUndeployForUpdateThenUndeploy() {
+        final ApiEventCoalescer coalescer = coalescer(60000);
+        coalescer.submit(ApiEvent.UPDATE, api("api"));
+        coalescer.submit(ApiEvent.UNDEPLOY, api("api"));
+        coalescer.close();
+
+        assertEquals(1, emitted.size());
+        assertEquals(ApiEvent.UNDEPLOY, emitted.get(0).type);
+    }
+
+    @Test
+    public void shouldCoalesceEachApiSeparately() {
+        final ApiEventCoalescer coalescer = coalescer(60000);
+        coalescer.submit(ApiEvent.DEPLOY, api("api-1"));
+        coalescer.submit(ApiEvent.UPDATE, api("api-2"));
+        coalescer.submit(ApiEvent.UPDATE, api("api-1"));
+        coalescer.close();
+
+        assertEquals(2, emitted.size());
+    }
+
+    @Test
+    public void shouldEmitAfterTheWindow() throws InterruptedException {
+        final CountDownLatch flushed = new CountDownLatch(1);
+        final ApiEventCoalescer coalescer = new ApiEventCoalescer(50, scheduler, (type, api) -> {
+            emitted.add(new Emitted(type, api));
+            flushed.countDown();
+        });
+        coalescer.submit(ApiEvent.UPDATE, api("api"));
+        coalescer.submit(ApiEvent.UPDATE, api("api"));
+        assertTrue(emitted.isEmpty());
+
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, emitted.size());
+        assertEquals(ApiEvent.UPDATE, emitted.get(0).type);
+    }
+
+    @Test
+    public void shouldEmitImmediatelyWithoutWindow() {
+        final ApiEventCoalescer coalescer = coalescer(0);
+        coalescer.submit(ApiEvent.DEPLOY, api("api"));
+        coalescer.submit(ApiEvent.UNDEPLOY, api("api"));
+
+        assertEquals(2, emitted.size());
+    }
+
+    @Test
+    public void shouldNotLoseTheEventsSubmittedWhileClosing() throws InterruptedException {
+        for (int round = 0; round < 100; round++) {
+            final ScheduledExecutorService roundScheduler = Executors.newSingleThreadScheduledExecutor();
+            final List<Emitted> roundEmitted = Collections.synchronizedList(new ArrayList<>());
+            final ApiEventCoalescer coalescer = new ApiEventCoalescer(60000, roundScheduler,
+                    (type, api) -> roundEmitted.add(new Emitted(type, api)));
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Thread> producers = new ArrayList<>();
+            for (int producer = 0; producer < 4; producer++) {
+                final String prefix = "api-" + producer + '-';
+                final Thread thread = new Thread(() -> {
+                    await(start);
+                    for (int i = 0; i < 200; i++) {
+                        coalescer.submit(ApiEvent.UPDATE, api(prefix + i));
+                    }
+                });
+                thread.start();
+                producers.add(thread);
+            }
+            start.countDown();
+            // as done on stop: the pending events are flushed then the scheduler is stopped
+            coalescer.close();
+            roundScheduler.shutdownNow();
+            for (final Thread thread : producers) {
+                thread.join();
+            }
+
+            assertEquals(800, roundEmitted.size());
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ApiEventCoalescer coalescer(final long window) {
+        return new ApiEventCoalescer(window, scheduler, (type, api) -> emitted.add(new Emitted(type, api)));
+    }
+
+    private static ApiEntity api(final String id) {
+        final ApiEntity api = new ApiEntity();
+        api.setId(id);
+        return api;
+    }
+
+    private static final class Emitted {
+        private final ApiEvent type;
+        private final ApiEntity api;
+
+        private Emitted(final ApiEvent type, final ApiEntity api) {
+            this.type = type;
+            this.api = api;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.dispatcher;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class ApiEventDispatcherTest {
+
+    @Test
+    public void shouldExecuteTheTasksOfAnApiInOrder() throws InterruptedException {
+        final ApiEventDispatcher dispatcher = new ApiEventDispatcher(4, 1000, ApiEventDispatcher.OverflowPolicy.BLOCK);
+        final Map<String, List<Integer>> executions = new ConcurrentHashMap<>();
+        for (int i = 0; i < 50; i++) {
+            for (int api = 0; api < 20; api++) {
+                final String apiId = "api-" + api;
+                final int index = i;
+                dispatcher.dispatch(apiId, () ->
+                        executions.computeIfAbsent(apiId, id -> Collections.synchronizedList(new ArrayList<>())).add(index));
+            }
+        }
+        dispatcher.shutdown(10, TimeUnit.SECONDS);
+
+        assertEquals(20, executions.size());
+        for (final List<Integer> apiExecutions : executions.values()) {
+            assertEquals(50, apiExecutions.size());
+            for (int i = 0; i < 50; i++) {
+                assertEquals(i, (int) apiExecutions.get(i));
+            }
+        }
+        assertEquals(1000, dispatcher.getDispatchedCount());
+        assertEquals(0, dispatcher.getDiscardedCount());
+    }
+
+    @Test
+    public void shouldDiscardTheTasksWhenTheQueueIsFull() throws InterruptedException {
+        final ApiEventDispatcher dispatcher = new ApiEventDispatcher(1, 1, ApiEventDispatcher.OverflowPolicy.DISCARD);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executed = new AtomicInteger();
+
+        dispatcher.dispatch("api", () -> {
+            started.countDown();
+            await(release);
+            executed.incrementAndGet();
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        dispatcher.dispatch("api", executed::incrementAndGet);
+        dispatcher.dispatch("api", executed::incrementAndGet);
+
+        assertEquals(2, dispatcher.getDispatchedCount());
+        assertEquals(1, dispatcher.getDiscardedCount());
+
+        release.countDown();
+        dispatcher.shutdown(10, TimeUnit.SECONDS);
+        assertEquals(2, executed.get());
+    }
+
+    @Test
+    public void shouldBlockWhenTheQueueIsFull() throws InterruptedException {
+        final ApiEventDispatcher dispatcher = new ApiEventDispatcher(1, 1, ApiEventDispatcher.OverflowPolicy.BLOCK);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> executions = Collections.synchronizedList(new ArrayList<>());
+
+        dispatcher.dispatch("api", () -> {
+            started.countDown();
+            await(release);
+            executions.add(1);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        dispatcher.dispatch("api", () -> executions.add(2));
+        final Thread producer = new Thread(() -> dispatcher.dispatch("api", () -> executions.add(3)));
+        producer.start();
+        producer.join(200);
+        assertTrue("the producer should wait for room in the queue", producer.isAlive());
+
+        release.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        dispatcher.shutdown(10, TimeUnit.SECONDS);
+
+        assertEquals(3, dispatcher.getDispatchedCount());
+        assertEquals(0, dispatcher.getDiscardedCount());
+        assertEquals(asList(1, 2, 3), executions);
+    }
+
+    @Test
+    public void shouldDrainTheQueuesOnShutdown() throws InterruptedException {
+        final ApiEventDispatcher dispatcher = new ApiEventDispatcher(2, 100, ApiEventDispatcher.OverflowPolicy.BLOCK);
+        final AtomicInteger executed = new AtomicInteger();
+        for (int i = 0; i < 50; i++) {
+            dispatcher.dispatch("api-" + i, () -> {
+                sleep(1);
+                executed.incrementAndGet();
+            });
+        }
+        dispatcher.shutdown(10, TimeUnit.SECONDS);
+
+        assertEquals(50, executed.get());
+        assertEquals(0, dispatcher.getPendingCount());
+    }
+
+    @Test
+    public void shouldDiscardThePendingTasksAfterTheShutdownTimeout() throws InterruptedException {
+        final ApiEventDispatcher dispatcher = new ApiEventDispatcher(1, 10, ApiEventDispatcher.OverflowPolicy.BLOCK);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executed = new AtomicInteger();
+        dispatcher.dispatch("api", () -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatch("api", executed::incrementAndGet);
+        }
+
+        dispatcher.shutdown(50, TimeUnit.MILLISECONDS);
+        release.countDown();
+
+        assertEquals(4, dispatcher.getDispatchedCount());
+        assertEquals(3, dispatcher.getDiscardedCount());
+        assertEquals(0, executed.get());
+        dispatcher.dispatch("api", executed::incrementAndGet);
+        assertEquals("a task dispatched after the shutdown is discarded", 4, dispatcher.getDiscardedCount());
+        assertEquals(4, dispatcher.getDispatchedCount());
+    }
+
+    @Test
+    public void shouldDiscardATaskWaitingForRoomWhenStopped() throws InterruptedException {
+        final ApiEventDispatcher dispatcher = new ApiEventDispatcher(1, 1, ApiEventDispatcher.OverflowPolicy.BLOCK);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executed = new AtomicInteger();
+        dispatcher.dispatch("api", () -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        dispatcher.dispatch("api", executed::incrementAndGet);
+        final boolean[] dispatched = {true};
+        final Thread producer = new Thread(() -> dispatched[0] = dispatcher.dispatch("api", executed::incrementAndGet));
+        producer.start();
+        producer.join(200);
+        assertTrue("the producer should wait for room in the queue", producer.isAlive());
+
+        // the queued task is dropped on timeout, letting the producer put its task into the stopped lane
+        dispatcher.shutdown(50, TimeUnit.MILLISECONDS);
+        release.countDown();
+        producer.join(5000);
+
+        assertFalse(producer.isAlive());
+        assertFalse(dispatched[0]);
+        assertEquals(0, executed.get());
+        assertEquals(2, dispatcher.getDispatchedCount());
+        assertEquals(2, dispatcher.getDiscardedCount());
+        assertEquals(0, dispatcher.getPendingCount());
+    }
+
+    @Test
+    public void shouldKeepProcessingAfterAFailedTask() throws InterruptedException {
+        final ApiEventDispatcher dispatcher = new ApiEventDispatcher(1, 10, ApiEventDispatcher.OverflowPolicy.BLOCK);
+        final AtomicInteger executed = new AtomicInteger();
+        dispatcher.dispatch("api", () -> {
+            throw new IllegalStateException("failure");
+        });
+        dispatcher.dispatch("api", executed::incrementAndGet);
+        dispatcher.shutdown(10, TimeUnit.SECONDS);
+
+        assertEquals(1, executed.get());
+        assertEquals(1, dispatcher.getFailedCount());
+    }
+
+    private static List<Integer> asList(final Integer... values) {
+        final List<Integer> list = new ArrayList<>();
+        Collections.addAll(list, values);
+        return list;
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.http;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class HttpTransportTest {
+
+    private HttpServer server;
+    private HttpTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 16);
+        server.createContext("/", exchange -> {
+            try {
+                final String path = exchange.getRequestURI().getPath();
+                final int status = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+                final byte[] body = "POST".equals(exchange.getRequestMethod()) ?
+                        read(exchange.getRequestBody()) : "{\"id\":\"api\",\"unknown\":true}".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+
+        final HttpTransportOptions options = new HttpTransportOptions();
+        // a connection not released by a call would make the next one time out
+        options.setMaxConnections(1);
+        options.setMaxConnectionsPerRoute(1);
+        options.setConnectionRequestTimeout(1000);
+        transport = new HttpTransport(options);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        transport.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldRecordTheStatusOfTheResponsesByEndpoint() throws IOException {
+        call("get", 200);
+        call("get", 404);
+        call("get", 503);
+        call("other", 200);
+
+        final EndpointMetrics metrics = transport.getMetrics().get("get");
+        assertEquals(3, metrics.getLatency().getCount());
+        assertEquals(1, metrics.getClientErrors());
+        assertEquals(1, metrics.getServerErrors());
+        assertEquals(0, metrics.getIOErrors());
+        assertEquals(1, transport.getMetrics().get("other").getLatency().getCount());
+    }
+
+    @Test
+    public void shouldRecordAnIOError() throws IOException {
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = socket.getLocalPort();
+        }
+
+        try {
+            transport.execute("refused", new HttpGet("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ':' + port),
+                    response -> null);
+            fail("The connection should have been refused");
+        } catch (final IOException ioe) {
+            // expected
+        }
+
+        final EndpointMetrics metrics = transport.getMetrics().get("refused");
+        assertEquals(1, metrics.getIOErrors());
+        assertEquals(1, metrics.getLatency().getCount());
+    }
+
+    @Test
+    public void shouldNotRecordAnErrorOfTheHandlerAsAnIOError() throws IOException {
+        try {
+            transport.execute("get", new HttpGet(url(500)), response -> {
+                throw new IOException("Unexpected status");
+            });
+            fail("The error of the handler should have been thrown");
+        } catch (final IOException ioe) {
+            assertEquals("Unexpected status", ioe.getMessage());
+        }
+
+        final EndpointMetrics metrics = transport.getMetrics().get("get");
+        assertEquals(1, metrics.getServerErrors());
+        assertEquals(0, metrics.getIOErrors());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldReadTheResponsesAndReleaseTheConnections() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            final HttpPost request = new HttpPost(url(200));
+            request.setEntity(transport.json(Collections.singletonMap("index", i)));
+
+            final Map<String, Object> value = transport.execute("post", request,
+                    response -> transport.read(response.getEntity(), Map.class));
+
+            assertEquals(i, value.get("index"));
+        }
+        assertEquals(5, transport.getMetrics().get("post").getLatency().getCount());
+    }
+
+    @Test
+    public void shouldIgnoreTheUnknownProperties() throws IOException {
+        final Api api = transport.execute("get", new HttpGet(url(200)), response -> transport.read(response.getEntity(), Api.class));
+
+        assertEquals("api", api.id);
+    }
+
+    private void call(final String endpoint, final int status) throws IOException {
+        transport.execute(endpoint, new HttpGet(url(status)), response -> transport.read(response.getEntity(), Map.class));
+    }
+
+    private String url(final int status) {
+        return "http://" + server.getAddress().getHostString() + ':' + server.getAddress().getPort() + "/status/" + status;
+    }
+
+    private static byte[] read(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+
+    public static class Api {
+        public String id;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldBeEmptyWithoutRecord() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void shouldReturnTheUpperBoundOfTheBucketOfThePercentile() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        // 90 calls in the 10ms bucket, 9 in the 250ms one and 1 in the 1000ms one
+        for (int i = 0; i < 90; i++) {
+            histogram.record(7);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(200);
+        }
+        histogram.record(800);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(800, histogram.getMax());
+        assertEquals(10, histogram.getPercentile(50));
+        assertEquals(10, histogram.getPercentile(90));
+        assertEquals(250, histogram.getPercentile(91));
+        assertEquals(250, histogram.getPercentile(99));
+        // capped by the max latency
+        assertEquals(800, histogram.getPercentile(100));
+        assertEquals((90 * 7 + 9 * 200 + 800) / 100D, histogram.getMean(), 0.001);
+    }
+
+    @Test
+    public void shouldIncludeTheBucketBounds() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(5);
+        histogram.record(6);
+
+        assertEquals(5, histogram.getPercentile(66));
+        assertEquals(6, histogram.getPercentile(67));
+    }
+
+    @Test
+    public void shouldReturnTheMaxForTheLastBucket() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(45000);
+
+        assertEquals(10, histogram.getPercentile(50));
+        assertEquals(45000, histogram.getPercentile(99));
+    }
+}
@@ -0,0 +1,300 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.mulesoft;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.gravitee.definition.model.Endpoint;
+import io.gravitee.definition.model.EndpointGroup;
+import io.gravitee.definition.model.Proxy;
+import io.gravitee.definition.model.VirtualHost;
+import io.gravitee.definition.model.endpoint.HttpEndpoint;
+import io.gravitee.rest.api.model.api.ApiEntity;
+import io.gravitee.rest.api.service.ParameterService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded stand-in of the MuleSoft endpoints used by the {@link MuleSoftAPIService}, answering each request after
+ * a configurable latency.
+ *
+ * @author GraviteeSource Team
+ */
+public class MockMuleSoftServer {
+
+    private static final String ORGANIZATION = "benchmark-org";
+    private static final String ENVIRONMENT = "benchmark-env";
+    private static final String APIS_PATH = "/apimanager/api/v1/organizations/" + ORGANIZATION + "/environments/" + ENVIRONMENT + "/apis";
+    private static final String ASSETS_PATH = "/exchange/api/v1/assets";
+
+    static {
+        // the response headers and body are written separately, do not let them wait for the client acknowledgement
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final long latency;
+    // MuleSoft API ids by asset id, the asset id being the Gravitee API id
+    private final Map<String, String> apis = new ConcurrentHashMap<>();
+    // last body received for each MuleSoft API id
+    private final Map<String, JsonNode> updates = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong logins = new AtomicLong();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile int failureStatus;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param latency the time, in milliseconds, taken by each request
+     */
+    public MockMuleSoftServer(final long latency) {
+        this.latency = latency;
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "mock-mulesoft");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getEndpoint() {
+        return "http://" + server.getAddress().getHostString() + ':' + server.getAddress().getPort();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getLoginCount() {
+        return logins.get();
+    }
+
+    /**
+     * @return the id of the MuleSoft API of the given Gravitee API, null if it does not exist
+     */
+    public String getMuleSoftApiId(final String apiId) {
+        return apis.get(apiId);
+    }
+
+    /**
+     * @return the last update received for the given MuleSoft API, null if none
+     */
+    public JsonNode getLastUpdate(final String muleSoftApiId) {
+        return updates.get(muleSoftApiId);
+    }
+
+    /**
+     * Answers the given number of next requests, the login excepted, with the given error status.
+     */
+    public void fail(final int status, final int count) {
+        failureStatus = status;
+        failures.set(count);
+    }
+
+    /**
+     * Answers the next requests, the login excepted, with the given error status until {@link #recover()} is called.
+     */
+    public void fail(final int status) {
+        fail(status, Integer.MAX_VALUE);
+    }
+
+    public void recover() {
+        failures.set(0);
+    }
+
+    /**
+     * Deletes the API as if it had been deleted on MuleSoft directly.
+     */
+    public void delete(final String apiId) {
+        apis.remove(apiId);
+    }
+
+    /**
+     * @return a {@link MuleSoftAPIService} configured as Spring would do it, calling this server
+     */
+    public MuleSoftAPIService createAPIService() throws ReflectiveOperationException {
+        final MuleSoftAPIService apiService = new MuleSoftAPIService();
+        set(apiService, "endpoint", getEndpoint());
+        set(apiService, "username", "benchmark");
+        set(apiService, "password", "benchmark");
+        set(apiService, "organization", ORGANIZATION);
+        set(apiService, "environment", ENVIRONMENT);
+        set(apiService, "parameterService", java.lang.reflect.Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{ParameterService.class}, (proxy, method, args) -> "https://portal.gravitee.io"));
+        return apiService;
+    }
+
+    /**
+     * @return an API as deployed on Gravitee
+     */
+    public static ApiEntity newApi(final String id) {
+        return newApi(id, "https://backend.gravitee.io/" + id);
+    }
+
+    /**
+     * @return an API as deployed on Gravitee, proxying the given target
+     */
+    public static ApiEntity newApi(final String id, final String target) {
+        final Proxy proxy = new Proxy();
+        proxy.setVirtualHosts(Collections.singletonList(new VirtualHost("/" + id)));
+        final EndpointGroup group = new EndpointGroup();
+        group.setName("default");
+        group.setEndpoints(Collections.<Endpoint>singleton(new HttpEndpoint("default", target)));
+        proxy.setGroups(Collections.singleton(group));
+
+        final ApiEntity api = new ApiEntity();
+        api.setId(id);
+        api.setName("API " + id);
+        api.setVersion("1.0");
+        api.setDescription("Description of the API " + id);
+        api.setProxy(proxy);
+        return api;
+    }
+
+    private static void set(final Object target, final String fieldName, final Object value) throws ReflectiveOperationException {
+        final Field field = target.getClass().getDeclaredField(fieldName);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            final byte[] body = read(exchange.getRequestBody());
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+            route(exchange, exchange.getRequestMethod(), exchange.getRequestURI().getPath(), body);
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, null);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(final HttpExchange exchange, final String method, final String path, final byte[] body) throws IOException {
+        if ("POST".equals(method) && "/accounts/login".equals(path)) {
+            logins.incrementAndGet();
+            respond(exchange, 200, "{\"token_type\":\"bearer\",\"access_token\":\"benchmark\",\"expires_in\":3600}");
+        } else if (!"bearer benchmark".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            respond(exchange, 401, null);
+        } else if (failures.getAndUpdate(count -> count > 0 ? count - 1 : 0) > 0) {
+            respond(exchange, failureStatus, null);
+        } else if ("POST".equals(method) && ASSETS_PATH.equals(path)) {
+            respond(exchange, 201, null);
+        } else if ("GET".equals(method) && path.startsWith(ASSETS_PATH + '/' + ORGANIZATION + '/')) {
+            final String apiId = apis.get(path.substring(path.lastIndexOf('/') + 1));
+            respond(exchange, apiId == null ? 404 : 200, apiId == null ? null : "{\"instances\":[{\"id\":\"" + apiId + "\"}]}");
+        } else if ("POST".equals(method) && APIS_PATH.equals(path)) {
+            final JsonNode api = mapper.readTree(body);
+            final String apiId = String.valueOf(nextId.incrementAndGet());
+            apis.put(api.path("spec").path("assetId").asText(), apiId);
+            respond(exchange, 201, "{\"id\":\"" + apiId + "\"}");
+        } else if ("GET".equals(method) && APIS_PATH.equals(path)) {
+            // the pages are cut from the assets sorted by id, as the offset and limit of the MuleSoft API
+            final Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            final int offset = Integer.parseInt(query.getOrDefault("offset", "0"));
+            final int limit = Integer.parseInt(query.getOrDefault("limit", String.valueOf(Integer.MAX_VALUE)));
+            final StringBuilder assets = new StringBuilder("{\"assets\":[");
+            new TreeMap<>(apis).entrySet().stream().skip(offset).limit(limit).forEach(api -> assets
+                    .append("{\"assetId\":\"").append(api.getKey())
+                    .append("\",\"apis\":[{\"id\":\"").append(api.getValue()).append("\"}]},"));
+            respond(exchange, 200, assets.substring(0, assets.length() - (assets.charAt(assets.length() - 1) == ',' ? 1 : 0)) + "]}");
+        } else if (path.startsWith(APIS_PATH + '/')) {
+            final String apiId = path.substring(APIS_PATH.length() + 1);
+            final boolean exists = apis.containsValue(apiId);
+            if ("DELETE".equals(method) && exists) {
+                apis.values().remove(apiId);
+                respond(exchange, 204, null);
+            } else if ("PATCH".equals(method) && exists) {
+                updates.put(apiId, mapper.readTree(body));
+                respond(exchange, 200, "{\"id\":\"" + apiId + "\"}");
+            } else {
+                respond(exchange, exists ? 200 : 404, exists ? "{\"id\":\"" + apiId + "\"}" : null);
+            }
+        } else {
+            respond(exchange, 404, null);
+        }
+    }
+
+    private static Map<String, String> query(final String query) {
+        final Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (final String parameter : query.split("&")) {
+                final int index = parameter.indexOf('=');
+                if (index > 0) {
+                    parameters.put(parameter.substring(0, index), parameter.substring(index + 1));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static byte[] read(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.mulesoft;
+
+import io.gravitee.management.services.external.api.http.HttpTransport;
+import io.gravitee.management.services.external.api.mulesoft.model.MuleSoftAssetEntity;
+import io.gravitee.rest.api.model.api.ApiEntity;
+import org.apache.http.HttpEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the serialization of the MuleSoft representations of an API and the synchronization of the APIs with an
+ * embedded MuleSoft stand-in, one by one and in batch.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=MuleSoftAPIServiceBenchmark
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MuleSoftAPIServiceBenchmark {
+
+    private static final int BATCH_SIZE = 50;
+
+    @Param({"0", "20"})
+    public long latency;
+
+    private MockMuleSoftServer server;
+    private MuleSoftAPIService apiService;
+    private HttpTransport transport;
+    private List<ApiEntity> apis;
+    private ApiEntity api;
+    private MuleSoftAssetEntity muleSoftAssetEntity;
+    private final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+    private long revision;
+
+    @Setup
+    public void setup() throws Exception {
+        server = new MockMuleSoftServer(latency);
+        server.start();
+        apiService = server.createAPIService();
+        transport = new HttpTransport();
+        apis = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            apis.add(MockMuleSoftServer.newApi("api-" + i));
+        }
+        // the APIs exist on MuleSoft, so each benchmark measures their update
+        apiService.startAPIs(apis);
+        api = apis.get(0);
+        muleSoftAssetEntity = apiService.convert(api);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        apiService.close();
+        server.stop();
+        transport.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public HttpEntity convert() throws IOException {
+        return transport.json(apiService.convert(api, apiService.convert(api)));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int multipartData() throws IOException {
+        sink.reset();
+        apiService.getMultipartData(muleSoftAssetEntity).writeTo(sink);
+        return sink.size();
+    }
+
+    /**
+     * Latency distribution (including p99) of the synchronization of a modified API.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void startAPI() {
+        apiService.startAPI(modify(api));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void startAPIsSequentially() {
+        for (final ApiEntity api : apis) {
+            apiService.startAPI(modify(api));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void startAPIsInBatch() {
+        for (final ApiEntity api : apis) {
+            modify(api);
+        }
+        apiService.startAPIs(apis);
+    }
+
+    /**
+     * Changes the API so it is not skipped as unchanged since its last synchronization.
+     */
+    private ApiEntity modify(final ApiEntity api) {
+        api.setDescription("Description of the API " + api.getId() + ", revision " + ++revision);
+        return api;
+    }
+}
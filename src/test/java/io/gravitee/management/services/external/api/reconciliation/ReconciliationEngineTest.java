@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.reconciliation;
+
+import io.gravitee.common.component.Lifecycle;
+import io.gravitee.management.services.external.api.dispatcher.ApiEventDispatcher;
+import io.gravitee.management.services.external.api.mulesoft.MockMuleSoftServer;
+import io.gravitee.management.services.external.api.mulesoft.MuleSoftAPIService;
+import io.gravitee.management.services.external.api.sharding.ShardingTagsMatcher;
+import io.gravitee.rest.api.model.api.ApiEntity;
+import io.gravitee.rest.api.service.ApiService;
+import io.gravitee.rest.api.service.exceptions.ApiNotFoundException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class ReconciliationEngineTest {
+
+    private final Map<String, ApiEntity> graviteeApis = new ConcurrentHashMap<>();
+    // run once the deployed APIs have been listed, as an event received during the reconciliation
+    private volatile Runnable onFindAll = () -> {};
+    private MockMuleSoftServer server;
+    private MuleSoftAPIService muleSoftAPIService;
+    private ApiEventDispatcher dispatcher;
+    private ReconciliationEngine engine;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockMuleSoftServer(0);
+        server.start();
+        muleSoftAPIService = server.createAPIService();
+        final ApiService graviteeApiService = (ApiService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{ApiService.class}, (proxy, method, args) -> {
+                    if ("findById".equals(method.getName())) {
+                        final ApiEntity api = graviteeApis.get((String) args[0]);
+                        if (api == null) {
+                            throw new ApiNotFoundException((String) args[0]);
+                        }
+                        return api;
+                    }
+                    final HashSet<ApiEntity> apis = new HashSet<>();
+                    graviteeApis.values().forEach(api -> apis.add(copy(api)));
+                    onFindAll.run();
+                    return apis;
+                });
+        dispatcher = new ApiEventDispatcher(2, 10, ApiEventDispatcher.OverflowPolicy.BLOCK);
+        engine = new ReconciliationEngine(muleSoftAPIService, graviteeApiService, () -> ShardingTagsMatcher.compile(null),
+                null, dispatcher, 2, 10, new RateLimiter(1000, 10));
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        dispatcher.shutdown(1, TimeUnit.SECONDS);
+        muleSoftAPIService.close();
+        server.stop();
+    }
+
+    @Test
+    public void shouldCreateTheDeployedApis() throws InterruptedException {
+        deploy("api-1");
+        deploy("api-2");
+
+        final ReconciliationReport report = engine.reconcile();
+
+        assertEquals(2, report.getCreated());
+        assertNotNull(server.getMuleSoftApiId("api-1"));
+        assertNotNull(server.getMuleSoftApiId("api-2"));
+    }
+
+    @Test
+    public void shouldRecreateAnApiDeletedFromTheProvider() throws InterruptedException {
+        deploy("api");
+        engine.reconcile();
+        server.delete("api");
+
+        final ReconciliationReport report = engine.reconcile();
+
+        assertEquals(1, report.getCreated());
+        assertEquals(0, report.getFailed());
+        assertNotNull(server.getMuleSoftApiId("api"));
+    }
+
+    @Test
+    public void shouldDeleteAnApiNoLongerDeployed() throws InterruptedException {
+        deploy("api");
+        engine.reconcile();
+        graviteeApis.get("api").setState(Lifecycle.State.STOPPED);
+
+        final ReconciliationReport report = engine.reconcile();
+
+        assertEquals(1, report.getDeleted());
+        assertNull(server.getMuleSoftApiId("api"));
+    }
+
+    @Test
+    public void shouldSkipAnApiUndeployedDuringTheReconciliation() throws InterruptedException {
+        deploy("api");
+        onFindAll = () -> graviteeApis.get("api").setState(Lifecycle.State.STOPPED);
+
+        final ReconciliationReport report = engine.reconcile();
+
+        assertEquals(1, report.getSkipped());
+        assertEquals(0, report.getCreated());
+        assertNull(server.getMuleSoftApiId("api"));
+    }
+
+    @Test
+    public void shouldApplyTheOperationsAfterThePendingEventsOfTheApi() throws InterruptedException {
+        deploy("api");
+        final AtomicBoolean existedOnEvent = new AtomicBoolean(true);
+        onFindAll = () -> dispatcher.dispatch("api", () -> existedOnEvent.set(server.getMuleSoftApiId("api") != null));
+
+        engine.reconcile();
+
+        assertFalse(existedOnEvent.get());
+        assertNotNull(server.getMuleSoftApiId("api"));
+        assertEquals(2, dispatcher.getDispatchedCount());
+    }
+
+    @Test
+    public void shouldListTheExternalApisOfAllThePages() throws InterruptedException {
+        // 25 APIs listed by pages of 10
+        for (int i = 0; i < 25; i++) {
+            deploy("api-" + i);
+        }
+        assertEquals(25, engine.reconcile().getCreated());
+        for (int i = 0; i < 12; i++) {
+            graviteeApis.get("api-" + i).setState(Lifecycle.State.STOPPED);
+        }
+
+        final ReconciliationReport report = engine.reconcile();
+
+        assertEquals(0, report.getCreated());
+        assertEquals(13, report.getUpdated());
+        assertEquals(12, report.getDeleted());
+        assertEquals(0, report.getFailed());
+    }
+
+    @Test
+    public void shouldStopOnAnEmptyPage() throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            deploy("api-" + i);
+        }
+        engine.reconcile();
+
+        final ReconciliationReport report = engine.reconcile();
+
+        assertEquals(0, report.getCreated());
+        assertEquals(20, report.getUpdated());
+    }
+
+    private void deploy(final String apiId) {
+        final ApiEntity api = MockMuleSoftServer.newApi(apiId);
+        api.setState(Lifecycle.State.STARTED);
+        graviteeApis.put(apiId, api);
+    }
+
+    private static ApiEntity copy(final ApiEntity api) {
+        final ApiEntity copy = MockMuleSoftServer.newApi(api.getId());
+        copy.setState(api.getState());
+        return copy;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.resilience;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class CircuitBreakerTest {
+
+    private final AtomicInteger closings = new AtomicInteger();
+
+    @Test
+    public void shouldOpenAfterTheConsecutiveFailures() {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker("test", 3, 1, TimeUnit.MINUTES, closings::incrementAndGet);
+
+        fail(circuitBreaker, 2);
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onSuccess();
+        fail(circuitBreaker, 2);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        fail(circuitBreaker, 1);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+        assertEquals(0, closings.get());
+    }
+
+    @Test
+    public void shouldAllowASingleProbeOnceTheOpenDurationHasElapsed() throws InterruptedException {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker("test", 1, 20, TimeUnit.MILLISECONDS, closings::incrementAndGet);
+        fail(circuitBreaker, 1);
+        Thread.sleep(30);
+
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void shouldCloseWhenTheProbeSucceeds() throws InterruptedException {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker("test", 1, 20, TimeUnit.MILLISECONDS, closings::incrementAndGet);
+        fail(circuitBreaker, 1);
+        Thread.sleep(30);
+
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(1, closings.get());
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void shouldReopenWhenTheProbeFails() throws InterruptedException {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker("test", 3, 20, TimeUnit.MILLISECONDS, closings::incrementAndGet);
+        fail(circuitBreaker, 3);
+        Thread.sleep(30);
+
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquire());
+        assertEquals(0, closings.get());
+    }
+
+    @Test
+    public void shouldAllowAnotherProbeOnceReleased() throws InterruptedException {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker("test", 1, 20, TimeUnit.MILLISECONDS, closings::incrementAndGet);
+        fail(circuitBreaker, 1);
+        Thread.sleep(30);
+        assertTrue(circuitBreaker.tryAcquire());
+
+        circuitBreaker.release();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    private static void fail(final CircuitBreaker circuitBreaker, final int failures) {
+        for (int i = 0; i < failures; i++) {
+            assertTrue(circuitBreaker.tryAcquire());
+            circuitBreaker.onFailure();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.resilience;
+
+import io.gravitee.management.services.external.api.resilience.FailureJournal.Operation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class FailureJournalTest {
+
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("external-api-journal");
+        file = directory.resolve("journal.log");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (final Path path : files.collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void shouldKeepTheLastOperationOfEachApiInOrder() throws IOException {
+        try (FailureJournal journal = new FailureJournal(file)) {
+            journal.append(Operation.START, "api-1");
+            journal.append(Operation.START, "api-2");
+            journal.append(Operation.STOP, "api-1");
+
+            assertEquals(asList("START api-2", "STOP api-1"), describe(journal.getPendingEntries()));
+        }
+    }
+
+    @Test
+    public void shouldTellWhetherAnEntryHasBeenSuperseded() throws IOException {
+        try (FailureJournal journal = new FailureJournal(file)) {
+            journal.append(Operation.START, "api");
+            final FailureJournal.Entry entry = journal.getPendingEntries().get(0);
+            assertTrue(journal.isPending(entry));
+
+            journal.append(Operation.START, "api");
+
+            assertFalse(journal.isPending(entry));
+            assertTrue(journal.isPending("api"));
+        }
+    }
+
+    @Test
+    public void shouldReloadThePendingOperations() throws IOException {
+        try (FailureJournal journal = new FailureJournal(file)) {
+            journal.append(Operation.START, "api-1");
+            journal.append(Operation.STOP, "api-2");
+            journal.append(Operation.START, "api-3");
+            journal.acknowledge("api-1");
+        }
+
+        try (FailureJournal journal = new FailureJournal(file)) {
+            assertEquals(asList("STOP api-2", "START api-3"), describe(journal.getPendingEntries()));
+        }
+    }
+
+    @Test
+    public void shouldRewriteOnlyThePendingOperationsOnCompaction() throws IOException {
+        try (FailureJournal journal = new FailureJournal(file)) {
+            journal.append(Operation.START, "api-1");
+            journal.append(Operation.START, "api-2");
+            journal.append(Operation.START, "api-1");
+            journal.acknowledge("api-2");
+
+            journal.compact();
+            journal.append(Operation.STOP, "api-3");
+
+            assertEquals(asList("START\tapi-1", "STOP\tapi-3"), Files.readAllLines(file, StandardCharsets.UTF_8));
+        }
+
+        try (FailureJournal journal = new FailureJournal(file)) {
+            assertEquals(asList("START api-1", "STOP api-3"), describe(journal.getPendingEntries()));
+        }
+    }
+
+    @Test
+    public void shouldSkipTheInvalidLines() throws IOException {
+        try (FailureJournal journal = new FailureJournal(file)) {
+            journal.append(Operation.START, "api-1");
+        }
+        // an unknown operation and a line truncated by a crash
+        Files.write(file, asList("RESTART\tapi-2", "STA"), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (FailureJournal journal = new FailureJournal(file)) {
+            journal.append(Operation.START, "api-3");
+
+            assertEquals(asList("START api-1", "START api-3"), describe(journal.getPendingEntries()));
+        }
+    }
+
+    @Test
+    public void shouldKeepTheOperationsInMemoryWithoutFile() throws IOException {
+        try (FailureJournal journal = new FailureJournal()) {
+            journal.append(Operation.START, "api");
+            journal.compact();
+
+            assertEquals(1, journal.size());
+            journal.acknowledge("api");
+            assertEquals(0, journal.size());
+        }
+    }
+
+    private static List<String> describe(final List<FailureJournal.Entry> entries) {
+        return entries.stream()
+                .map(entry -> entry.getOperation() + " " + entry.getApiId())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,336 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.resilience;
+
+import io.gravitee.common.component.Lifecycle;
+import io.gravitee.management.services.external.api.APIService;
+import io.gravitee.management.services.external.api.ExternalAPIException;
+import io.gravitee.management.services.external.api.mulesoft.MockMuleSoftServer;
+import io.gravitee.management.services.external.api.resilience.FailureJournal.Operation;
+import io.gravitee.rest.api.model.api.ApiEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class ResilientAPIServiceTest {
+
+    private final Map<String, ApiEntity> graviteeApis = new ConcurrentHashMap<>();
+    private final ResilienceOptions options = new ResilienceOptions();
+    private MockMuleSoftServer server;
+    private ResilientAPIService apiService;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockMuleSoftServer(0);
+        server.start();
+        options.setInitialBackoff(1);
+        options.setMaxBackoff(5);
+        options.setReplayInterval(0);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (apiService != null) {
+            apiService.close();
+        }
+        server.stop();
+    }
+
+    @Test
+    public void shouldRetryTheServerErrors() throws Exception {
+        options.setMaxAttempts(3);
+        createAPIService(new FailureJournal());
+        server.fail(503, 2);
+
+        apiService.startAPI(deploy("api"));
+
+        assertNotNull(server.getMuleSoftApiId("api"));
+        assertEquals(0, apiService.getPendingCount());
+    }
+
+    @Test
+    public void shouldNotRetryTheClientErrors() throws Exception {
+        options.setMaxAttempts(3);
+        createAPIService(new FailureJournal());
+        apiService.startAPI(deploy("other-api"));
+        final long requests = server.getRequestCount();
+        server.fail(400, 3);
+
+        try {
+            apiService.startAPI(deploy("api"));
+            fail("The client error should have been thrown");
+        } catch (final ExternalAPIException eae) {
+            assertFalse(eae.isRetryable());
+        }
+
+        assertEquals(requests + 1, server.getRequestCount());
+        assertNull(server.getMuleSoftApiId("api"));
+        assertEquals(0, apiService.getPendingCount());
+        assertEquals(CircuitBreaker.State.CLOSED, apiService.getCircuitState());
+    }
+
+    @Test
+    public void shouldJournalTheOperationFailingAfterTheRetries() throws Exception {
+        options.setMaxAttempts(2);
+        createAPIService(new FailureJournal());
+        server.fail(503);
+
+        apiService.startAPI(deploy("api"));
+
+        assertEquals(1, apiService.getPendingCount());
+        assertNull(server.getMuleSoftApiId("api"));
+    }
+
+    @Test
+    public void shouldRejectTheCallsOnceTheCircuitIsOpen() throws Exception {
+        options.setMaxAttempts(1);
+        options.setFailureThreshold(2);
+        options.setOpenDuration(60000);
+        createAPIService(new FailureJournal());
+        server.fail(503);
+        apiService.startAPI(deploy("api-1"));
+        apiService.startAPI(deploy("api-2"));
+        final long requests = server.getRequestCount();
+
+        apiService.startAPI(deploy("api-3"));
+
+        assertEquals(CircuitBreaker.State.OPEN, apiService.getCircuitState());
+        assertEquals(requests, server.getRequestCount());
+        assertEquals(3, apiService.getPendingCount());
+    }
+
+    @Test
+    public void shouldReplayOnceTheCircuitIsClosedAgain() throws Exception {
+        options.setMaxAttempts(1);
+        options.setFailureThreshold(1);
+        options.setOpenDuration(50);
+        createAPIService(new FailureJournal());
+        server.fail(503);
+        apiService.startAPI(deploy("api-1"));
+        server.recover();
+        Thread.sleep(60);
+
+        apiService.startAPI(deploy("api-2"));
+
+        await(() -> apiService.getPendingCount() == 0);
+        assertNotNull(server.getMuleSoftApiId("api-1"));
+        assertNotNull(server.getMuleSoftApiId("api-2"));
+    }
+
+    @Test
+    public void shouldReplayTheLastOperationOfEachApiInOrder() throws Exception {
+        options.setMaxAttempts(1);
+        options.setFailureThreshold(100);
+        createAPIService(new FailureJournal());
+        server.fail(503);
+        apiService.startAPI(deploy("api-1"));
+        apiService.startAPI(deploy("api-2"));
+        apiService.startAPI(deploy("api-3"));
+        apiService.startAPI(deploy("api-1"));
+        apiService.stopAPI(graviteeApis.remove("api-3"));
+        server.recover();
+
+        replay();
+
+        assertNull(server.getMuleSoftApiId("api-3"));
+        // the MuleSoft ids are given in the order of creation
+        assertTrue(Long.parseLong(server.getMuleSoftApiId("api-2")) < Long.parseLong(server.getMuleSoftApiId("api-1")));
+    }
+
+    @Test
+    public void shouldReplayTheCurrentVersionOfTheApi() throws Exception {
+        options.setMaxAttempts(1);
+        createAPIService(new FailureJournal());
+        apiService.startAPI(deploy("api"));
+        server.fail(503);
+        final ApiEntity api = deploy("api");
+        api.setDescription("Failed description");
+        apiService.startAPI(api);
+        deploy("api").setDescription("Current description");
+        server.recover();
+
+        replay();
+
+        assertEquals("Current description",
+                server.getLastUpdate(server.getMuleSoftApiId("api")).path("instanceLabel").asText());
+    }
+
+    @Test
+    public void shouldDropTheStartOfAnApiDeletedFromGravitee() throws Exception {
+        options.setMaxAttempts(1);
+        createAPIService(new FailureJournal());
+        server.fail(503);
+        apiService.startAPI(deploy("api"));
+        graviteeApis.remove("api");
+        server.recover();
+
+        replay();
+
+        assertNull(server.getMuleSoftApiId("api"));
+    }
+
+    @Test
+    public void shouldDropTheStartOfAnApiStoppedBeforeTheReplay() throws Exception {
+        options.setMaxAttempts(1);
+        createAPIService(new FailureJournal());
+        server.fail(503);
+        apiService.startAPI(deploy("api"));
+        graviteeApis.get("api").setState(Lifecycle.State.STOPPED);
+        server.recover();
+
+        replay();
+
+        assertNull(server.getMuleSoftApiId("api"));
+    }
+
+    @Test
+    public void shouldStartABatchIncludingAnApiPendingReplay() throws Exception {
+        options.setMaxAttempts(1);
+        createAPIService(new FailureJournal());
+        server.fail(503);
+        apiService.startAPI(deploy("api-1"));
+        server.recover();
+
+        apiService.startAPIs(Arrays.asList(deploy("api-1"), deploy("api-2"), deploy("api-3")));
+
+        assertEquals(0, apiService.getPendingCount());
+        assertNotNull(server.getMuleSoftApiId("api-1"));
+        assertNotNull(server.getMuleSoftApiId("api-2"));
+        assertNotNull(server.getMuleSoftApiId("api-3"));
+    }
+
+    @Test
+    public void shouldNotLockTheApisDuringTheBatchCall() throws Exception {
+        final CountDownLatch batchStarted = new CountDownLatch(1);
+        final CountDownLatch batchReleased = new CountDownLatch(1);
+        final List<String> started = Collections.synchronizedList(new ArrayList<>());
+        apiService = new ResilientAPIService(new APIService() {
+            @Override
+            public String name() {
+                return "Blocking";
+            }
+
+            @Override
+            public void startAPI(final ApiEntity api) {
+                started.add(api.getId());
+            }
+
+            @Override
+            public void stopAPI(final ApiEntity api) {
+            }
+
+            @Override
+            public void startAPIs(final Collection<ApiEntity> apis) {
+                batchStarted.countDown();
+                try {
+                    batchReleased.await();
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                apis.forEach(this::startAPI);
+            }
+        }, options, new FailureJournal());
+        final Thread batch = new Thread(() -> apiService.startAPIs(Arrays.asList(deploy("api-1"), deploy("api-2"))));
+        batch.start();
+        assertTrue(batchStarted.await(5, TimeUnit.SECONDS));
+
+        // the same APIs, and so the same lock stripes, as the batch in progress
+        final Thread operations = new Thread(() -> {
+            apiService.startAPI(deploy("api-1"));
+            apiService.startAPI(deploy("api-2"));
+        });
+        try {
+            operations.start();
+            operations.join(5000);
+            assertEquals(Arrays.asList("api-1", "api-2"), started);
+        } finally {
+            batchReleased.countDown();
+            batch.join(5000);
+            operations.join(5000);
+        }
+    }
+
+    @Test
+    public void shouldReplayTheJournalOnceStarted() throws Exception {
+        deploy("api-1");
+        deploy("api-2");
+        final FailureJournal journal = new FailureJournal();
+        journal.append(Operation.START, "api-1");
+        journal.append(Operation.START, "api-2");
+
+        apiService = new ResilientAPIService(server.createAPIService(), options, journal);
+        Thread.sleep(50);
+        assertEquals(2, apiService.getPendingCount());
+
+        apiService.start(this::findDeployedApi);
+
+        await(() -> apiService.getPendingCount() == 0);
+        assertNotNull(server.getMuleSoftApiId("api-1"));
+        assertNotNull(server.getMuleSoftApiId("api-2"));
+    }
+
+    private void createAPIService(final FailureJournal journal) throws ReflectiveOperationException {
+        apiService = new ResilientAPIService(server.createAPIService(), options, journal);
+        apiService.start(this::findDeployedApi);
+    }
+
+    private ApiEntity deploy(final String apiId) {
+        final ApiEntity api = MockMuleSoftServer.newApi(apiId);
+        api.setState(Lifecycle.State.STARTED);
+        graviteeApis.put(apiId, api);
+        return api;
+    }
+
+    private ApiEntity findDeployedApi(final String apiId) {
+        final ApiEntity api = graviteeApis.get(apiId);
+        return api != null && api.getState() == Lifecycle.State.STARTED ? api : null;
+    }
+
+    /**
+     * Replays the journal, again if the replay started with the service was still running.
+     */
+    private void replay() throws InterruptedException {
+        await(() -> {
+            apiService.replay();
+            return apiService.getPendingCount() == 0;
+        });
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition not met in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.sharding;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.text.Collator;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Compares the precompiled {@link ShardingTagsMatcher} with the former per event evaluation of the sharding tags.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ShardingTagsMatcherBenchmark
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShardingTagsMatcherBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int configuredTags;
+
+    @Param({"5", "50"})
+    public int apiTags;
+
+    private List<String> shardingTags;
+    private ShardingTagsMatcher matcher;
+    private Set<String> matchingTags;
+    private Set<String> notMatchingTags;
+
+    @Setup
+    public void setup() {
+        final StringBuilder expression = new StringBuilder();
+        for (int i = 0; i < configuredTags; i++) {
+            expression.append("tag-").append(i).append(',');
+            if (i % 10 == 0) {
+                expression.append("!excluded-").append(i).append(',');
+            }
+        }
+        shardingTags = asList(expression.toString().split(","));
+        matcher = ShardingTagsMatcher.compile(expression.toString());
+
+        notMatchingTags = new HashSet<>();
+        for (int i = 0; i < apiTags; i++) {
+            notMatchingTags.add("other-" + i);
+        }
+        notMatchingTags.add("excluded-0");
+        matchingTags = new HashSet<>(notMatchingTags);
+        matchingTags.add("tag-" + (configuredTags - 1));
+    }
+
+    @Benchmark
+    public boolean legacyMatching() {
+        return legacyHasMatchingTags(matchingTags);
+    }
+
+    @Benchmark
+    public boolean legacyNotMatching() {
+        return legacyHasMatchingTags(notMatchingTags);
+    }
+
+    @Benchmark
+    public boolean compiledMatching() {
+        return matcher.matches(matchingTags);
+    }
+
+    @Benchmark
+    public boolean compiledNotMatching() {
+        return matcher.matches(notMatchingTags);
+    }
+
+    /**
+     * Former implementation of ExternalAPIService#hasMatchingTags.
+     */
+    private boolean legacyHasMatchingTags(Set<String> tags) {
+        if (!shardingTags.isEmpty()) {
+            if (tags != null) {
+                final List<String> inclusionTags = shardingTags.stream()
+                        .map(String::trim)
+                        .filter(tag -> !tag.startsWith("!"))
+                        .collect(Collectors.toList());
+
+                final List<String> exclusionTags = shardingTags.stream()
+                        .map(String::trim)
+                        .filter(tag -> tag.startsWith("!"))
+                        .map(tag -> tag.substring(1))
+                        .collect(Collectors.toList());
+
+                if (inclusionTags.stream().anyMatch(exclusionTags::contains)) {
+                    throw new IllegalArgumentException("You must not configure a tag to be included and excluded");
+                }
+
+                return inclusionTags.stream()
+                        .anyMatch(tag -> tags.stream()
+                                .anyMatch(crtTag -> {
+                                    final Collator collator = Collator.getInstance();
+                                    collator.setStrength(Collator.NO_DECOMPOSITION);
+                                    return collator.compare(tag, crtTag) == 0;
+                                })
+                        ) || (!exclusionTags.isEmpty() &&
+                        exclusionTags.stream()
+                                .noneMatch(tag -> tags.stream()
+                                        .anyMatch(crtTag -> {
+                                            final Collator collator = Collator.getInstance();
+                                            collator.setStrength(Collator.NO_DECOMPOSITION);
+                                            return collator.compare(tag, crtTag) == 0;
+                                        })
+                                ));
+            }
+            return false;
+        }
+        return true;
+    }
+}
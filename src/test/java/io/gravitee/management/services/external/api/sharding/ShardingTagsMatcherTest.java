@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.sharding;
+
+import org.junit.Test;
+
+import java.text.Collator;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class ShardingTagsMatcherTest {
+
+    @Test
+    public void shouldMatchEveryApiWithoutConfiguredTags() {
+        for (final String expression : asList(null, "", " , ")) {
+            final ShardingTagsMatcher matcher = ShardingTagsMatcher.compile(expression);
+
+            assertTrue(matcher.matches(null));
+            assertTrue(matcher.matches(Collections.emptySet()));
+            assertTrue(matcher.matches(tags("public")));
+        }
+    }
+
+    @Test
+    public void shouldMatchTheIncludedTags() {
+        final ShardingTagsMatcher matcher = ShardingTagsMatcher.compile("public, partner");
+
+        assertTrue(matcher.matches(tags("partner")));
+        assertTrue(matcher.matches(tags("internal", "public")));
+        assertFalse(matcher.matches(tags("internal")));
+        assertFalse(matcher.matches(Collections.emptySet()));
+        assertFalse(matcher.matches(null));
+    }
+
+    @Test
+    public void shouldMatchTheApisWithoutExcludedTags() {
+        final ShardingTagsMatcher matcher = ShardingTagsMatcher.compile("!internal");
+
+        assertTrue(matcher.matches(tags("public")));
+        assertTrue(matcher.matches(Collections.emptySet()));
+        assertFalse(matcher.matches(tags("public", "internal")));
+        assertFalse(matcher.matches(null));
+    }
+
+    @Test
+    public void shouldGiveThePrecedenceToTheIncludedTags() {
+        final ShardingTagsMatcher matcher = ShardingTagsMatcher.compile("public,!internal");
+
+        assertTrue(matcher.matches(tags("public", "internal")));
+        assertTrue(matcher.matches(tags("partner")));
+        assertFalse(matcher.matches(tags("internal")));
+    }
+
+    @Test
+    public void shouldIgnoreTheCaseAndTheAccents() {
+        final ShardingTagsMatcher matcher = ShardingTagsMatcher.compile("Europe,!Priv\u00e9");
+
+        assertTrue(matcher.matches(tags("EUROPE")));
+        assertFalse(matcher.matches(tags("prive")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectATagBothIncludedAndExcluded() {
+        ShardingTagsMatcher.compile("public, !public");
+    }
+
+    @Test
+    public void shouldMatchAsTheFormerEvaluation() {
+        final List<String> expressions = asList("public", "public,partner", "!internal", "!internal,!private",
+                "public,!internal", " Public , !INTERNAL ", "Europe,!Priv\u00e9");
+        final List<Set<String>> apiTags = asList(null, Collections.emptySet(), tags("public"), tags("PUBLIC"),
+                tags("internal"), tags("public", "internal"), tags("partner", "private"), tags("other"),
+                tags("europe"), tags("prive"), tags("Priv\u00e9", "other"));
+        for (final String expression : expressions) {
+            final ShardingTagsMatcher matcher = ShardingTagsMatcher.compile(expression);
+            for (final Set<String> tags : apiTags) {
+                assertEquals(expression + " " + tags, legacyHasMatchingTags(asList(expression.split(",")), tags),
+                        matcher.matches(tags));
+            }
+        }
+    }
+
+    private static Set<String> tags(final String... tags) {
+        return new HashSet<>(asList(tags));
+    }
+
+    /**
+     * Evaluation of the sharding tags before the {@link ShardingTagsMatcher}.
+     */
+    private static boolean legacyHasMatchingTags(final List<String> shardingTags, final Set<String> tags) {
+        if (!shardingTags.isEmpty()) {
+            if (tags != null) {
+                final List<String> inclusionTags = shardingTags.stream()
+                        .map(String::trim)
+                        .filter(tag -> !tag.startsWith("!"))
+                        .collect(Collectors.toList());
+                final List<String> exclusionTags = shardingTags.stream()
+                        .map(String::trim)
+                        .filter(tag -> tag.startsWith("!"))
+                        .map(tag -> tag.substring(1))
+                        .collect(Collectors.toList());
+                if (inclusionTags.stream().anyMatch(exclusionTags::contains)) {
+                    throw new IllegalArgumentException("You must not configure a tag to be included and excluded");
+                }
+                return inclusionTags.stream()
+                        .anyMatch(tag -> tags.stream()
+                                .anyMatch(crtTag -> {
+                                    final Collator collator = Collator.getInstance();
+                                    collator.setStrength(Collator.NO_DECOMPOSITION);
+                                    return collator.compare(tag, crtTag) == 0;
+                                })
+                        ) || (!exclusionTags.isEmpty() &&
+                        exclusionTags.stream()
+                                .noneMatch(tag -> tags.stream()
+                                        .anyMatch(crtTag -> {
+                                            final Collator collator = Collator.getInstance();
+                                            collator.setStrength(Collator.NO_DECOMPOSITION);
+                                            return collator.compare(tag, crtTag) == 0;
+                                        })
+                                ));
+            }
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.management.services.external.api.state;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class SyncStateStoreTest {
+
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("external-api-state");
+        file = directory.resolve("state.properties");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (final Path path : files.collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void shouldReloadTheStatesAfterARestart() {
+        final SyncStateStore store = new SyncStateStore(file, 1, TimeUnit.HOURS);
+        store.put("api-1", "hash-1", "external-1");
+        store.put("api-2", "hash-2", null);
+        store.put("api-3", "hash-3", "external-3");
+        store.remove("api-3");
+        store.close();
+
+        final SyncStateStore reloadedStore = new SyncStateStore(file, 1, TimeUnit.HOURS);
+        try {
+            assertEquals("hash-1", reloadedStore.get("api-1").getHash());
+            assertEquals("external-1", reloadedStore.get("api-1").getExternalId());
+            assertEquals("hash-2", reloadedStore.get("api-2").getHash());
+            assertNull(reloadedStore.get("api-2").getExternalId());
+            assertNull(reloadedStore.get("api-3"));
+            assertEquals(2, reloadedStore.getApiIds().size());
+        } finally {
+            reloadedStore.close();
+        }
+    }
+
+    @Test
+    public void shouldWriteTheChangesOnlyOnFlush() {
+        final SyncStateStore store = new SyncStateStore(file, 1, TimeUnit.HOURS);
+        try {
+            for (int i = 0; i < 100; i++) {
+                store.put("api-" + i, "hash-" + i, "external-" + i);
+            }
+            assertFalse(Files.exists(file));
+
+            store.flush();
+
+            assertTrue(Files.exists(file));
+            assertEquals(100, reload().getApiIds().size());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void shouldWriteTheChangesPeriodically() throws InterruptedException {
+        final SyncStateStore store = new SyncStateStore(file, 10, TimeUnit.MILLISECONDS);
+        try {
+            store.put("api", "hash", "external");
+
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (!Files.exists(file)) {
+                assertTrue("The states should have been written", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void shouldWriteAChangeMadeAfterClose() {
+        final SyncStateStore store = new SyncStateStore(file, 1, TimeUnit.HOURS);
+        store.close();
+
+        store.put("api", "hash", "external");
+
+        assertEquals("hash", reload().get("api").getHash());
+    }
+
+    @Test
+    public void shouldKeepTheStatesInMemoryWithoutFile() {
+        final SyncStateStore store = new SyncStateStore();
+        store.put("api", "hash", "external");
+        store.close();
+
+        assertEquals("external", store.get("api").getExternalId());
+    }
+
+    /**
+     * @return the states written to the file
+     */
+    private SyncStateStore reload() {
+        final SyncStateStore store = new SyncStateStore(file);
+        store.close();
+        return store;
+    }
+}